@@ -11,4 +11,19 @@ public @interface CacheCheck {
      * 过期时间 秒
      */
     long exTime() default 0;
+
+    /**
+     * 本地缓存过期时间 秒，0 不使用本地缓存
+     */
+    long localTime() default 0;
+
+    /**
+     * 空结果的缓存时间 秒，0 不缓存空结果
+     */
+    long nullTime() default 0;
+
+    /**
+     * 按第一个缓存参数(siteId$path)登记站点和路径标签，用于按标签删除缓存
+     */
+    boolean tagged() default false;
 }
@@ -1,12 +1,14 @@
 package cn.har01d.alist_tvbox.aop;
 
 import cn.har01d.alist_tvbox.annotation.CacheCheck;
+import cn.har01d.alist_tvbox.model.CacheEntry;
+import cn.har01d.alist_tvbox.service.CacheRefreshService;
+import cn.har01d.alist_tvbox.service.CacheTagService;
 import cn.har01d.alist_tvbox.service.IRedisService;
-import cn.har01d.alist_tvbox.tvbox.MovieList;
-import cn.har01d.alist_tvbox.util.MD5Utils;
+import cn.har01d.alist_tvbox.service.LocalCacheService;
+import cn.har01d.alist_tvbox.util.HashUtils;
 import com.alibaba.fastjson2.JSON;
 import lombok.extern.slf4j.Slf4j;
-import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.Signature;
 import org.aspectj.lang.annotation.Around;
@@ -16,10 +18,10 @@ import org.aspectj.lang.reflect.MethodSignature;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
-import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
-import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Aspect
 @Component
@@ -28,115 +30,182 @@ import java.lang.reflect.Method;
 public class CacheAspect {
     @Autowired
     private IRedisService redisService;
+    @Autowired
+    private LocalCacheService localCacheService;
+    @Autowired
+    private CacheRefreshService cacheRefreshService;
+    @Autowired
+    private CacheTagService cacheTagService;
 
+    /**
+     * Redis 中缓存的最长保留时间 秒
+     */
+    private static final long EXPIRE = 60*60*24*3;
 
-    @Pointcut("execution(public * cn.har01d.alist_tvbox.service..*.*(..))")
-    public void service() {
+    private final Map<Method, CacheMetadata> metadataMap = new ConcurrentHashMap<>();
+
+    @Pointcut("@annotation(cn.har01d.alist_tvbox.annotation.CacheCheck)")
+    public void cacheable() {
     }
 
-    @Around("service()")
+    @Around("cacheable()")
     public Object checkCache(ProceedingJoinPoint joinPoint) throws Throwable {
-        Class<?> targetClass = joinPoint.getTarget().getClass();
-        String className = targetClass.getSimpleName();
-        Method method = this.getMethod(joinPoint);
-        CacheCheck cacheCheck = (CacheCheck)method.getAnnotation(CacheCheck.class);
-        if(cacheCheck != null){
-            long exTime = cacheCheck.exTime();
-            Boolean hasArgs = false;
-            // 获取目标方法的入参
-            Object[] args = joinPoint.getArgs();
-            StringBuilder key = new StringBuilder();
-            key.append("cache:").append(className).append(":").append(method.getName());
-            StringBuilder pkey = new StringBuilder();
-            // 遍历参数列表，查找含有特定注解的参数
-            Annotation[][] parameterAnnotations = method.getParameterAnnotations();
-            for (int i = 0; i < args.length; i++) {
-                Annotation[] annotations = parameterAnnotations[i];
-                for (Annotation annotation : annotations) {
-                    if (annotation instanceof CacheCheck) {
-                        Object arg = args[i];
-                        if(arg instanceof ServletUriComponentsBuilder){
-                            pkey.append(MD5Utils.md5(((ServletUriComponentsBuilder)arg).build()
-                                    .getHost()));
-                        }else {
-                            pkey.append(MD5Utils.md5(JSON.toJSONString(arg)));
-                        }
-                        hasArgs = true;
-                    }
+        CacheMetadata metadata = getMetadata(joinPoint);
+        if(metadata != null){
+            long exTime = metadata.getExTime();
+            long localTime = metadata.getLocalTime();
+            long nullTime = metadata.getNullTime();
+            String key = buildKey(metadata, joinPoint.getArgs());
+            long ahead = CacheContext.getRefreshAhead();
+            if(localTime > 0 && ahead == 0){
+                Object local = localCacheService.get(key);
+                if(local == CacheEntry.EMPTY){
+                    return null;
+                }
+                if(local != null){
+                    return local;
                 }
-            }
-            if(hasArgs){
-                key.append(":").append(MD5Utils.md5(pkey.toString()));
             }
             Object cache = null;
             try {
-                cache = redisService.get(key.toString());
+                cache = redisService.get(key);
             }catch (Exception e){
                 return joinPoint.proceed();
             }
             if(cache == null){
                 Object result = joinPoint.proceed();
                 if(result != null){
+                    localCacheService.put(key,result,localTime);
                     try {
-                        redisService.set(key.toString(),result,60*60*24*3);
-                        if( exTime > 0){
-                            redisService.set(key.toString().replace("cache","extime"),exTime,exTime);
-                        }
+                        redisService.set(key,new CacheEntry(result,expireAt(exTime)),EXPIRE);
+                        register(metadata,joinPoint.getArgs(),key);
+                        localCacheService.publish(key);
                     }catch (Exception ignore){
                         return result;
                     }
+                }else if(nullTime > 0){
+                    // 空结果只缓存较短时间，避免每次都重新遍历
+                    localCacheService.put(key,CacheEntry.EMPTY,Math.min(localTime,nullTime));
+                    try {
+                        redisService.set(key,new CacheEntry(),nullTime);
+                        localCacheService.publish(key);
+                    }catch (Exception ignore){
+                    }
                 }
                 return result;
             }else {
-                if( exTime > 0){
-                    if(!redisService.hasKey(key.toString().replace("cache","extime"))){
-                        new Thread(() -> {
-                            Object result = null;
-                            try {
-                                result = joinPoint.proceed();
-                            } catch (Throwable e) {
-                                throw new RuntimeException(e);
-                            }
+                Object value;
+                boolean stale;
+                if(cache instanceof CacheEntry){
+                    CacheEntry entry = (CacheEntry) cache;
+                    value = entry.getValue();
+                    stale = entry.expired(System.currentTimeMillis() + ahead);
+                }else {
+                    // 旧格式的缓存值，没有软过期时间
+                    value = cache;
+                    stale = true;
+                }
+                if(value == null){
+                    localCacheService.put(key,CacheEntry.EMPTY,Math.min(localTime,nullTime));
+                    return null;
+                }
+                localCacheService.put(key,value,localTime);
+                if(stale){
+                    cacheRefreshService.submit(key, () -> {
+                        Object result = null;
+                        try {
+                            result = joinPoint.proceed();
+                        } catch (Throwable e) {
+                            throw new RuntimeException(e);
+                        }
+                        if(result == null){
+                            // 结果变为空后不能继续返回旧值: 按空结果缓存 nullTime，或者删除
                             try {
-                                redisService.set(key.toString(),result,60*60*24*3);
-                                redisService.set(key.toString().replace("cache","extime"),exTime,exTime);
+                                if(nullTime > 0){
+                                    redisService.set(key,new CacheEntry(),nullTime);
+                                }else {
+                                    redisService.del(key);
+                                }
                             }catch (Exception ignore){
                             }
-                        }).start();
-                    }
+                            localCacheService.invalidate(key);
+                            localCacheService.put(key,CacheEntry.EMPTY,Math.min(localTime,nullTime));
+                            return;
+                        }
+                        try {
+                            redisService.set(key,new CacheEntry(result,expireAt(exTime)),EXPIRE);
+                            register(metadata,joinPoint.getArgs(),key);
+                            localCacheService.put(key,result,localTime);
+                            localCacheService.publish(key);
+                        }catch (Exception ignore){
+                        }
+                    });
                 }
-                return cache;
+                return value;
             }
         }else {
             return joinPoint.proceed();
         }
     }
 
+    private void register(CacheMetadata metadata, Object[] args, String key) {
+        if (metadata.isTagged() && metadata.getKeyParameters().length > 0) {
+            Object tid = args[metadata.getKeyParameters()[0]];
+            if (tid instanceof String) {
+                cacheTagService.register(key, (String) tid);
+            }
+        }
+    }
 
+    private static long expireAt(long exTime) {
+        return exTime > 0 ? System.currentTimeMillis() + exTime * 1000 : 0;
+    }
 
-
-
-
-
-
-
-
-    protected Method getMethod(JoinPoint joinPoint) {
+    private CacheMetadata getMetadata(ProceedingJoinPoint joinPoint) {
         Signature sig = joinPoint.getSignature();
-        MethodSignature msig = null;
         if (!(sig instanceof MethodSignature)) {
             throw new IllegalArgumentException("该注解只能用于方法");
-        } else {
-            msig = (MethodSignature)sig;
-            Object target = joinPoint.getTarget();
-
-            try {
-                return target.getClass().getMethod(msig.getName(), msig.getParameterTypes());
-            } catch (NoSuchMethodException | SecurityException var6) {
-                log.error(var6.getMessage(), var6);
+        }
+        Method method = ((MethodSignature) sig).getMethod();
+        CacheMetadata metadata = metadataMap.get(method);
+        if (metadata == null) {
+            Class<?> targetClass = joinPoint.getTarget().getClass();
+            Method targetMethod = getTargetMethod(targetClass, method);
+            CacheCheck cacheCheck = targetMethod.getAnnotation(CacheCheck.class);
+            if (cacheCheck == null) {
+                return null;
             }
+            metadata = new CacheMetadata(targetClass.getSimpleName(), targetMethod, cacheCheck);
+            metadataMap.put(method, metadata);
+        }
+        return metadata;
+    }
+
+    private Method getTargetMethod(Class<?> targetClass, Method method) {
+        try {
+            return targetClass.getMethod(method.getName(), method.getParameterTypes());
+        } catch (NoSuchMethodException | SecurityException e) {
+            log.error(e.getMessage(), e);
+            return method;
+        }
+    }
 
-            return null;
+    static String buildKey(CacheMetadata metadata, Object[] args) {
+        int[] parameters = metadata.getKeyParameters();
+        if (parameters.length == 0) {
+            return metadata.getKeyPrefix();
+        }
+
+        StringBuilder sb = new StringBuilder(128);
+        for (int index : parameters) {
+            Object arg = args[index];
+            if (arg == null || arg instanceof String || arg instanceof Number || arg instanceof Boolean) {
+                sb.append(arg);
+            } else {
+                sb.append(JSON.toJSONString(arg));
+            }
+            sb.append('\u0000');
         }
+        return metadata.getKeyPrefix() + ":" + HashUtils.hash128(sb);
     }
 }
@@ -0,0 +1,28 @@
+package cn.har01d.alist_tvbox.aop;
+
+/**
+ * 当前线程的缓存选项，预热时使用
+ */
+public final class CacheContext {
+    private static final ThreadLocal<Long> REFRESH_AHEAD = new ThreadLocal<>();
+
+    private CacheContext() {
+    }
+
+    /**
+     * 执行 task 时跳过本地缓存，软过期时间在 millis 毫秒内的缓存提前在后台刷新
+     */
+    public static void refreshAhead(long millis, Runnable task) {
+        REFRESH_AHEAD.set(millis);
+        try {
+            task.run();
+        } finally {
+            REFRESH_AHEAD.remove();
+        }
+    }
+
+    static long getRefreshAhead() {
+        Long millis = REFRESH_AHEAD.get();
+        return millis == null ? 0 : millis;
+    }
+}
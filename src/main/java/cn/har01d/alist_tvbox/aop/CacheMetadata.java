@@ -0,0 +1,64 @@
+package cn.har01d.alist_tvbox.aop;
+
+import cn.har01d.alist_tvbox.annotation.CacheCheck;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+/**
+ * 缓存方法的元数据，每个方法只解析一次
+ */
+class CacheMetadata {
+    private final String keyPrefix;
+    private final int[] keyParameters;
+    private final long exTime;
+    private final long localTime;
+    private final long nullTime;
+    private final boolean tagged;
+
+    CacheMetadata(String className, Method method, CacheCheck cacheCheck) {
+        this.keyPrefix = "cache:" + className + ":" + method.getName();
+        this.exTime = cacheCheck.exTime();
+        this.localTime = cacheCheck.localTime();
+        this.nullTime = cacheCheck.nullTime();
+        this.tagged = cacheCheck.tagged();
+
+        Annotation[][] parameterAnnotations = method.getParameterAnnotations();
+        int[] indexes = new int[parameterAnnotations.length];
+        int count = 0;
+        for (int i = 0; i < parameterAnnotations.length; i++) {
+            for (Annotation annotation : parameterAnnotations[i]) {
+                if (annotation instanceof CacheCheck) {
+                    indexes[count++] = i;
+                    break;
+                }
+            }
+        }
+        this.keyParameters = Arrays.copyOf(indexes, count);
+    }
+
+    String getKeyPrefix() {
+        return keyPrefix;
+    }
+
+    int[] getKeyParameters() {
+        return keyParameters;
+    }
+
+    long getExTime() {
+        return exTime;
+    }
+
+    long getLocalTime() {
+        return localTime;
+    }
+
+    long getNullTime() {
+        return nullTime;
+    }
+
+    boolean isTagged() {
+        return tagged;
+    }
+}
@@ -1,9 +1,13 @@
 package cn.har01d.alist_tvbox.config;
 
+import cn.har01d.alist_tvbox.model.UrlRewrite;
 import cn.har01d.alist_tvbox.tvbox.Site;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -12,7 +16,56 @@ import java.util.Set;
 public class AppProperties {
     private boolean sort;
     private int pageSize = 100;
+    private int snapshotPageSize = 500;
+    private int snapshotExpire = 600;
+    private int snapshotCacheSize = 500;
+    private long browseTimeout = 3000;
+    private int browseThreads = 8;
+    private int localCacheSize = 1000;
+    private long localCacheWeight = 64 * 1024 * 1024;
+    private int cacheRefreshThreads = 4;
+    private int cacheRefreshQueueSize = 200;
+    private boolean cacheRefreshLock = true;
+    private int siteFailureThreshold = 5;
+    private double siteErrorRate = 0.5;
+    private int siteOpenTime = 30;
+    private int siteConnectTimeout = 3000;
+    private int siteMinTimeout = 2000;
+    private int siteMaxTimeout = 30000;
+    private int siteConcurrency = 8;
+    private int siteMaxConcurrency = 32;
+    private int siteQueueSize = 200;
+    private long siteQueueTimeout = 10000;
+    private long mirrorProbeDelay = 10000;
+    private boolean mirrorHedge;
+    private double mirrorHedgePercentile = 0.95;
+    private long mirrorHedgeDelay = 1000;
+    private int mirrorHedgeThreads = 32;
+    private int redisFailureThreshold = 5;
+    private int redisOpenTime = 10;
+    private int redisFallbackCacheSize = 1000;
+    private boolean redisClientCache;
+    private int redisClientCacheSize = 1000;
+    private int redisClientCacheTtl = 600;
+    private String cacheCodec = "json";
+    private int cacheCompressThreshold = 4096;
+    private double popularityDecay = 0.5;
+    private int popularityMaxSize = 10000;
+    private long popularityFlushDelay = 10000;
+    private long popularityDecayDelay = 3600000;
+    private int warmerSize = 50;
+    private long warmerDelay = 300000;
+    private boolean listingStore;
+    private long listingStoreExpire = 1800;
+    private long listingStoreDetailExpire = 600;
+    private int listingStoreMaxSize = 100000;
+    private boolean cacheSnapshot = true;
+    private long cacheSnapshotDelay = 600000;
+    private int playlistMaxDepth = 10;
+    private int playlistConcurrency = 4;
     private String configUrl = "https://hutool.ml/tang";
+    private Set<Integer> httpsPorts = new HashSet<>(Arrays.asList(443, 9443, 32443));
+    private List<UrlRewrite> urlRewrites = new ArrayList<>();
     private Set<String> formats;
     private List<Site> sites;
 }
@@ -0,0 +1,179 @@
+package cn.har01d.alist_tvbox.config;
+
+import com.alibaba.fastjson2.JSONB;
+import com.alibaba.fastjson2.JSONReader;
+import com.alibaba.fastjson2.JSONWriter;
+import com.alibaba.fastjson2.support.spring.data.redis.GenericFastJsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.ByteArrayOutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Redis 值的序列化。格式: 魔数(1) + 版本(1) + 标志(1) + 内容，内容是 fastjson2 JSONB，
+ * 超过阈值时用 deflate 压缩。
+ * 没有头的数据按原来的文本 JSON 读取，所以可以先用 json 编码部署，所有节点升级后再切换到 jsonb。
+ */
+public class CompactRedisSerializer implements RedisSerializer<Object> {
+    public static final String CODEC_JSON = "json";
+    public static final String CODEC_JSONB = "jsonb";
+
+    private static final byte MAGIC = (byte) 0xAC;
+    private static final byte VERSION = 1;
+    private static final int HEADER_SIZE = 3;
+    private static final byte FLAG_DEFLATE = 1;
+
+    private final GenericFastJsonRedisSerializer jsonSerializer = new GenericFastJsonRedisSerializer();
+    private final boolean jsonb;
+    private final int compressThreshold;
+
+    private final AtomicLong encoded = new AtomicLong();
+    private final AtomicLong compressed = new AtomicLong();
+    private final AtomicLong rawBytes = new AtomicLong();
+    private final AtomicLong wireBytes = new AtomicLong();
+    private final AtomicLong encodeTime = new AtomicLong();
+    private final AtomicLong decoded = new AtomicLong();
+    private final AtomicLong decodeTime = new AtomicLong();
+
+    /**
+     * @param compressThreshold 超过这个字节数才压缩，小于等于0不压缩
+     */
+    public CompactRedisSerializer(String codec, int compressThreshold) {
+        this.jsonb = CODEC_JSONB.equalsIgnoreCase(codec);
+        this.compressThreshold = compressThreshold;
+    }
+
+    @Override
+    public byte[] serialize(Object object) throws SerializationException {
+        if (object == null) {
+            return new byte[0];
+        }
+        long start = System.nanoTime();
+        byte[] bytes;
+        if (jsonb) {
+            try {
+                bytes = encode(JSONB.toBytes(object, JSONWriter.Feature.WriteClassName));
+            } catch (Exception e) {
+                throw new SerializationException("Could not serialize: " + e.getMessage(), e);
+            }
+        } else {
+            bytes = jsonSerializer.serialize(object);
+            rawBytes.addAndGet(bytes.length);
+        }
+        encodeTime.addAndGet(System.nanoTime() - start);
+        encoded.incrementAndGet();
+        wireBytes.addAndGet(bytes.length);
+        return bytes;
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        long start = System.nanoTime();
+        Object object;
+        if (bytes.length >= HEADER_SIZE && bytes[0] == MAGIC) {
+            if (bytes[1] != VERSION) {
+                throw new SerializationException("Unsupported codec version: " + bytes[1]);
+            }
+            try {
+                object = JSONB.parseObject(decode(bytes), Object.class, JSONReader.Feature.SupportAutoType);
+            } catch (Exception e) {
+                throw new SerializationException("Could not deserialize: " + e.getMessage(), e);
+            }
+        } else {
+            object = jsonSerializer.deserialize(bytes);
+        }
+        decodeTime.addAndGet(System.nanoTime() - start);
+        decoded.incrementAndGet();
+        return object;
+    }
+
+    private byte[] encode(byte[] body) {
+        rawBytes.addAndGet(body.length);
+        byte flags = 0;
+        if (compressThreshold > 0 && body.length > compressThreshold) {
+            byte[] deflated = deflate(body);
+            if (deflated.length < body.length) {
+                body = deflated;
+                flags |= FLAG_DEFLATE;
+                compressed.incrementAndGet();
+            }
+        }
+        byte[] bytes = new byte[HEADER_SIZE + body.length];
+        bytes[0] = MAGIC;
+        bytes[1] = VERSION;
+        bytes[2] = flags;
+        System.arraycopy(body, 0, bytes, HEADER_SIZE, body.length);
+        return bytes;
+    }
+
+    private byte[] decode(byte[] bytes) throws DataFormatException {
+        if ((bytes[2] & FLAG_DEFLATE) != 0) {
+            return inflate(bytes, HEADER_SIZE, bytes.length - HEADER_SIZE);
+        }
+        byte[] body = new byte[bytes.length - HEADER_SIZE];
+        System.arraycopy(bytes, HEADER_SIZE, body, 0, body.length);
+        return body;
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 64);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] data, int offset, int length) throws DataFormatException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, offset, length);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(length * 4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("truncated deflate data");
+                }
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            inflater.end();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long count = encoded.get();
+        long raw = rawBytes.get();
+        long wire = wireBytes.get();
+        stats.put("codec", jsonb ? CODEC_JSONB : CODEC_JSON);
+        stats.put("encoded", count);
+        stats.put("compressed", compressed.get());
+        stats.put("rawBytes", raw);
+        stats.put("wireBytes", wire);
+        stats.put("ratio", raw == 0 ? 1.0 : (double) wire / raw);
+        stats.put("avgEncodeUs", count == 0 ? 0 : encodeTime.get() / count / 1000);
+        stats.put("decoded", decoded.get());
+        stats.put("avgDecodeUs", decoded.get() == 0 ? 0 : decodeTime.get() / decoded.get() / 1000);
+        return stats;
+    }
+}
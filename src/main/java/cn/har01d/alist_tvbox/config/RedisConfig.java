@@ -11,6 +11,7 @@ import org.springframework.data.redis.cache.RedisCacheManager;
 import org.springframework.data.redis.cache.RedisCacheWriter;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
 import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
@@ -30,10 +31,14 @@ public class RedisConfig extends CachingConfigurerSupport {
     //}
 
     @Bean
-    public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory factory) {
+    public CompactRedisSerializer compactRedisSerializer(AppProperties appProperties) {
+        return new CompactRedisSerializer(appProperties.getCacheCodec(), appProperties.getCacheCompressThreshold());
+    }
+
+    @Bean
+    public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory factory, CompactRedisSerializer valueSerializer) {
         RedisTemplate<String, Object> redisTemplate = new RedisTemplate<String, Object>();
         redisTemplate.setConnectionFactory(factory);
-        GenericFastJsonRedisSerializer fastJsonRedisSerializer = new GenericFastJsonRedisSerializer();
 
         //FastJson2JsonRedisSerializer<Object> fastJson2JsonRedisSerializer =
         //        new FastJson2JsonRedisSerializer<>(Object.class);
@@ -45,14 +50,21 @@ public class RedisConfig extends CachingConfigurerSupport {
         StringRedisSerializer stringRedisSerializer = new StringRedisSerializer();
         redisTemplate.setKeySerializer(stringRedisSerializer);// 设置key采用String的序列化方式
         redisTemplate.setHashKeySerializer(stringRedisSerializer);// 设置hash的key也采用String的序列化方式
-        redisTemplate.setValueSerializer(fastJsonRedisSerializer); // 设置value采用的fastjson的序列化方式
-        redisTemplate.setHashValueSerializer(fastJsonRedisSerializer);// 设置hash的value采用的fastjson的序列化方式
-        redisTemplate.setDefaultSerializer(fastJsonRedisSerializer);// 设置其他默认的序列化方式为fastjson
+        redisTemplate.setValueSerializer(valueSerializer); // 设置value采用的fastjson的序列化方式, jsonb 编码时带版本头并压缩大对象
+        redisTemplate.setHashValueSerializer(valueSerializer);// 设置hash的value采用的fastjson的序列化方式
+        redisTemplate.setDefaultSerializer(valueSerializer);// 设置其他默认的序列化方式为fastjson
         redisTemplate.afterPropertiesSet();
 
         return redisTemplate;
     }
 
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory factory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(factory);
+        return container;
+    }
+
     @Bean
     public CacheManager redisCacheManager(RedisConnectionFactory connectionFactory) {
         RedisSerializationContext.SerializationPair<Object> serializationPair = RedisSerializationContext.SerializationPair
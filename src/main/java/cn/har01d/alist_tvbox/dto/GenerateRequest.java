@@ -7,4 +7,5 @@ public class GenerateRequest {
     private Integer siteId;
     private String path;
     private boolean includeSub;
+    private Integer maxDepth;
 }
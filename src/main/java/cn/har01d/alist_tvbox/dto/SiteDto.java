@@ -10,5 +10,8 @@ public class SiteDto {
     private String indexFile;
     private boolean searchable;
     private boolean disabled;
+    private boolean proxyPlay;
+    private boolean indexBrowse;
+    private String mirrorGroup;
     private int order;
 }
@@ -25,6 +25,11 @@ public class Site {
     private String indexFile;
     private boolean searchable;
     private boolean disabled;
+    @Column(columnDefinition = "boolean default false")
+    private boolean proxyPlay;
+    @Column(columnDefinition = "boolean default false")
+    private boolean indexBrowse;
+    private String mirrorGroup;
     @Column(name = "`order`")
     private int order;
     @Column(name = "`version`")
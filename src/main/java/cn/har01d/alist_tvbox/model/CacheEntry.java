@@ -0,0 +1,41 @@
+package cn.har01d.alist_tvbox.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Redis 中的缓存值，和软过期时间保存在同一个 key 中，读写都只需要一次请求
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CacheEntry {
+    /**
+     * 本地缓存中表示空结果，本地缓存不能保存 null。按引用比较，不能修改；
+     * 写入 Redis 时使用 new CacheEntry()
+     */
+    public static final CacheEntry EMPTY = new Empty();
+
+    private Object value;
+    /**
+     * 软过期时间戳 毫秒，0 不过期。过期后仍然返回旧值，同时在后台刷新
+     */
+    private long expireAt;
+
+    public boolean expired(long now) {
+        return expireAt > 0 && expireAt <= now;
+    }
+
+    private static final class Empty extends CacheEntry {
+        @Override
+        public void setValue(Object value) {
+            throw new UnsupportedOperationException("CacheEntry.EMPTY is immutable");
+        }
+
+        @Override
+        public void setExpireAt(long expireAt) {
+            throw new UnsupportedOperationException("CacheEntry.EMPTY is immutable");
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package cn.har01d.alist_tvbox.model;
+
+import cn.har01d.alist_tvbox.tvbox.MovieDetail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 一个目录的完整列表，目录在前文件在后。
+ * 每种排序方式的下标数组在第一次使用时计算并缓存，之后任意一页都直接从内存中取。
+ */
+public class DirectorySnapshot {
+    private static final String DEFAULT_SORT = "name,asc";
+
+    private final List<MovieDetail> items;
+    private final int folderCount;
+    private final List<MovieDetail> playlists;
+    private final long createdAt;
+    private final Map<String, int[]> indexes = new ConcurrentHashMap<>();
+    private volatile NaturalSortKey[] nameKeys;
+
+    public DirectorySnapshot(List<MovieDetail> folders, List<MovieDetail> files, List<MovieDetail> playlists) {
+        this(folders, files, playlists, System.currentTimeMillis());
+    }
+
+    public DirectorySnapshot(List<MovieDetail> folders, List<MovieDetail> files, List<MovieDetail> playlists, long createdAt) {
+        this.createdAt = createdAt;
+        this.items = new ArrayList<>(folders.size() + files.size());
+        this.items.addAll(folders);
+        this.items.addAll(files);
+        this.folderCount = folders.size();
+        this.playlists = playlists;
+    }
+
+    public int getTotal() {
+        return items.size();
+    }
+
+    public int getFolderCount() {
+        return folderCount;
+    }
+
+    public int getFileCount() {
+        return items.size() - folderCount;
+    }
+
+    public List<MovieDetail> getPlaylists() {
+        return playlists;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public List<MovieDetail> getFolders() {
+        return items.subList(0, folderCount);
+    }
+
+    public List<MovieDetail> getFiles() {
+        return items.subList(folderCount, items.size());
+    }
+
+    /**
+     * @param page 从1开始
+     */
+    public List<MovieDetail> getPage(String sort, int page, int size) {
+        int[] index = getIndex(sort == null ? DEFAULT_SORT : sort);
+        int start = Math.max(0, (page - 1) * size);
+        int end = Math.min(items.size(), start + size);
+        List<MovieDetail> list = new ArrayList<>(Math.max(0, end - start));
+        for (int i = start; i < end; i++) {
+            list.add(items.get(index[i]));
+        }
+        return list;
+    }
+
+    private int[] getIndex(String sort) {
+        int[] index = indexes.get(sort);
+        if (index == null) {
+            index = buildIndex(sort);
+            indexes.put(sort, index);
+        }
+        return index;
+    }
+
+    private int[] buildIndex(String sort) {
+        Comparator<Integer> comparator;
+        switch (sort) {
+            case "name,asc":
+                comparator = nameComparator();
+                break;
+            case "name,desc":
+                comparator = nameComparator().reversed();
+                break;
+            case "time,asc":
+                comparator = Comparator.comparing(i -> items.get(i).getVod_time(), Comparator.nullsFirst(Comparator.<String>naturalOrder()));
+                break;
+            case "time,desc":
+                comparator = Comparator.comparing((Integer i) -> items.get(i).getVod_time(), Comparator.nullsFirst(Comparator.<String>naturalOrder())).reversed();
+                break;
+            case "size,asc":
+                comparator = Comparator.comparingLong(i -> items.get(i).getSize());
+                break;
+            case "size,desc":
+                comparator = Comparator.comparingLong((Integer i) -> items.get(i).getSize()).reversed();
+                break;
+            default:
+                comparator = null;
+        }
+
+        Integer[] boxed = new Integer[items.size()];
+        for (int i = 0; i < boxed.length; i++) {
+            boxed[i] = i;
+        }
+        if (comparator != null) {
+            // 目录和文件分别排序，目录始终在前面
+            Arrays.sort(boxed, 0, folderCount, comparator);
+            Arrays.sort(boxed, folderCount, boxed.length, comparator);
+        }
+
+        int[] index = new int[boxed.length];
+        for (int i = 0; i < index.length; i++) {
+            index[i] = boxed[i];
+        }
+        return index;
+    }
+
+    private Comparator<Integer> nameComparator() {
+        NaturalSortKey[] keys = nameKeys;
+        if (keys == null) {
+            keys = new NaturalSortKey[items.size()];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = NaturalSortKey.of(items.get(i).getVod_name());
+            }
+            nameKeys = keys;
+        }
+        NaturalSortKey[] finalKeys = keys;
+        return Comparator.comparing(i -> finalKeys[i]);
+    }
+}
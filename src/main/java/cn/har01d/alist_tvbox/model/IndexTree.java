@@ -0,0 +1,113 @@
+package cn.har01d.alist_tvbox.model;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 索引文件构建的目录树，每个目录保存子节点，按路径逐级查找，不需要扫描索引。
+ * 索引中的路径形如 ./电影/xxx/01.mp4，"." 和空的路径段会被忽略。
+ */
+public class IndexTree {
+    private final Node root = new Node("", true);
+    private int folders;
+    private int files;
+
+    /**
+     * 中间的路径段都是目录，最后一段由 file 决定
+     */
+    public void add(String path, boolean file) {
+        Node node = root;
+        String[] names = path.split("/");
+        int last = lastSegment(names);
+        for (int i = 0; i <= last; i++) {
+            String name = names[i];
+            if (name.isEmpty() || ".".equals(name)) {
+                continue;
+            }
+            boolean folder = i < last || !file;
+            Node child = node.children.get(name);
+            if (child == null) {
+                child = new Node(name, folder);
+                node.children.put(name, child);
+                if (folder) {
+                    folders++;
+                } else {
+                    files++;
+                }
+            } else if (folder && !child.folder) {
+                // 同名的文件后来又作为目录出现
+                child.folder = true;
+                child.children = new LinkedHashMap<>();
+                files--;
+                folders++;
+            }
+            if (!child.folder) {
+                return;
+            }
+            node = child;
+        }
+    }
+
+    /**
+     * @return 路径不存在或者不是目录时返回 null
+     */
+    public Node find(String path) {
+        Node node = root;
+        for (String name : path.split("/")) {
+            if (name.isEmpty() || ".".equals(name)) {
+                continue;
+            }
+            node = node.children.get(name);
+            if (node == null || !node.folder) {
+                return null;
+            }
+        }
+        return node;
+    }
+
+    public int getFolders() {
+        return folders;
+    }
+
+    public int getFiles() {
+        return files;
+    }
+
+    private static int lastSegment(String[] names) {
+        for (int i = names.length - 1; i >= 0; i--) {
+            if (!names[i].isEmpty() && !".".equals(names[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public static class Node {
+        private final String name;
+        private boolean folder;
+        // 文件没有子节点，不分配 Map
+        private Map<String, Node> children;
+
+        Node(String name, boolean folder) {
+            this.name = name;
+            this.folder = folder;
+            if (folder) {
+                children = new LinkedHashMap<>();
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isFolder() {
+            return folder;
+        }
+
+        public Collection<Node> getChildren() {
+            return children == null ? Collections.<Node>emptyList() : Collections.unmodifiableCollection(children.values());
+        }
+    }
+}
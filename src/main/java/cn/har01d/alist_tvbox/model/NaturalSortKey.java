@@ -0,0 +1,147 @@
+package cn.har01d.alist_tvbox.model;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Locale;
+import java.util.function.Function;
+
+/**
+ * 文件名自然排序的键，每个名字只解析一次。
+ * 名字中的数字（阿拉伯数字或者中文数字）按数值比较，前缀相同的数字从后往前比较，
+ * 都相同时按中文排序规则比较整个名字。
+ */
+public final class NaturalSortKey implements Comparable<NaturalSortKey> {
+    private static final Collator COLLATOR = Collator.getInstance(Locale.CHINA);
+    private static final String NUMBERS = "零一二三四五六七八九十";
+
+    private final String name;
+    /**
+     * 第 i 个数字前面的前缀是 name[0, prefixEnds[i])
+     */
+    private final int[] prefixEnds;
+    private final double[] numbers;
+    private final CollationKey collationKey;
+
+    private NaturalSortKey(String name, int[] prefixEnds, double[] numbers, int count) {
+        this.name = name;
+        this.prefixEnds = count == prefixEnds.length ? prefixEnds : Arrays.copyOf(prefixEnds, count);
+        this.numbers = count == numbers.length ? numbers : Arrays.copyOf(numbers, count);
+        this.collationKey = COLLATOR.getCollationKey(name);
+    }
+
+    public static NaturalSortKey of(String name) {
+        int[] prefixEnds = new int[4];
+        double[] numbers = new double[4];
+        int count = 0;
+        int length = name.length();
+        int i = 0;
+        while (i < length) {
+            char c = name.charAt(i);
+            int end;
+            double number;
+            if (isDigit(c)) {
+                end = i + 1;
+                while (end < length && isDigit(name.charAt(end))) {
+                    end++;
+                }
+                if (end < length && name.charAt(end) == '.') {
+                    end++;
+                    while (end < length && isDigit(name.charAt(end))) {
+                        end++;
+                    }
+                }
+                number = Double.parseDouble(name.substring(i, end));
+            } else if (NUMBERS.indexOf(c) >= 0) {
+                end = i + 1;
+                while (end < length && NUMBERS.indexOf(name.charAt(end)) >= 0) {
+                    end++;
+                }
+                number = parseChineseNumber(name, i, end);
+            } else {
+                i++;
+                continue;
+            }
+
+            if (count == prefixEnds.length) {
+                prefixEnds = Arrays.copyOf(prefixEnds, count * 2);
+                numbers = Arrays.copyOf(numbers, count * 2);
+            }
+            prefixEnds[count] = i;
+            numbers[count] = number;
+            count++;
+            i = end;
+        }
+        return new NaturalSortKey(name, prefixEnds, numbers, count);
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static double parseChineseNumber(String name, int start, int end) {
+        int index = NUMBERS.indexOf(name.charAt(start));
+        if (index == 10 && end - start == 2) {
+            return 10 + NUMBERS.indexOf(name.charAt(start + 1));
+        }
+        return index;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int compareTo(NaturalSortKey o) {
+        int n = Math.min(prefixEnds.length, o.prefixEnds.length);
+        for (int i = n - 1; i >= 0; i--) {
+            int len = prefixEnds[i];
+            if (len == o.prefixEnds[i] && name.regionMatches(0, o.name, 0, len)) {
+                int result = Double.compare(numbers[i], o.numbers[i]);
+                if (result != 0) {
+                    return result;
+                }
+            }
+        }
+        return collationKey.compareTo(o.collationKey);
+    }
+
+    /**
+     * 先为每个元素计算排序键，再按排序键排序，排序是稳定的
+     */
+    public static <T> void sort(List<T> list, Function<? super T, String> nameGetter, boolean reversed) {
+        if (list.size() < 2) {
+            return;
+        }
+
+        Entry<?>[] entries = new Entry<?>[list.size()];
+        int i = 0;
+        for (T item : list) {
+            entries[i++] = new Entry<>(of(nameGetter.apply(item)), item);
+        }
+
+        Comparator<Entry<?>> comparator = Comparator.comparing(e -> e.key);
+        Arrays.sort(entries, reversed ? comparator.reversed() : comparator);
+
+        ListIterator<T> iterator = list.listIterator();
+        for (Entry<?> entry : entries) {
+            iterator.next();
+            @SuppressWarnings("unchecked")
+            T value = (T) entry.value;
+            iterator.set(value);
+        }
+    }
+
+    private static final class Entry<T> {
+        private final NaturalSortKey key;
+        private final T value;
+
+        private Entry(NaturalSortKey key, T value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
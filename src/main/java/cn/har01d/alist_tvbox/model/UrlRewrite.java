@@ -0,0 +1,16 @@
+package cn.har01d.alist_tvbox.model;
+
+import lombok.Data;
+
+/**
+ * 按请求的主机名替换播放地址，比如通过外网域名访问时把局域网地址换成外网地址
+ */
+@Data
+public class UrlRewrite {
+    /**
+     * 请求的主机名，为空时对所有主机生效
+     */
+    private String host;
+    private String from;
+    private String to;
+}
@@ -1,20 +1,35 @@
 package cn.har01d.alist_tvbox.service;
 
+import cn.har01d.alist_tvbox.config.AppProperties;
 import cn.har01d.alist_tvbox.dto.FileItem;
 import cn.har01d.alist_tvbox.entity.Site;
 import cn.har01d.alist_tvbox.model.*;
-import cn.har01d.alist_tvbox.util.Constants;
+import cn.har01d.alist_tvbox.exception.ServiceUnavailableException;
+import cn.har01d.alist_tvbox.util.RequestPriority;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.web.client.RestTemplateBuilder;
-import org.springframework.http.HttpHeaders;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
 
+import javax.annotation.PreDestroy;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
@@ -23,19 +38,68 @@ import java.util.stream.Collectors;
 public class AListService {
     private static final Pattern VERSION = Pattern.compile("\"version\":\"v\\d+\\.\\d+\\.\\d+\"");
 
-    private final RestTemplate restTemplate;
     private final SiteService siteService;
+    private final ListingStore listingStore;
+    private final SiteHealthService siteHealthService;
+    private final MirrorRouter mirrorRouter;
+    private final AppProperties appProperties;
+    private final ThreadPoolExecutor hedgeExecutor;
 
     @Autowired
     private IRedisService redisService;
 
 
-    public AListService(RestTemplateBuilder builder, SiteService siteService) {
-        this.restTemplate = builder
-                .defaultHeader(HttpHeaders.ACCEPT, Constants.ACCEPT)
-                .defaultHeader(HttpHeaders.USER_AGENT, Constants.USER_AGENT)
-                .build();
+    public AListService(SiteService siteService, ListingStore listingStore, SiteHealthService siteHealthService,
+                        MirrorRouter mirrorRouter, AppProperties appProperties) {
         this.siteService = siteService;
+        this.listingStore = listingStore;
+        this.siteHealthService = siteHealthService;
+        this.mirrorRouter = mirrorRouter;
+        this.appProperties = appProperties;
+        // 不排队: 线程都忙时拒绝，这次请求不对冲，站点变慢时线程数不会无限增长
+        int threads = Math.max(1, appProperties.getMirrorHedgeThreads());
+        AtomicInteger count = new AtomicInteger();
+        this.hedgeExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(),
+                r -> {
+                    Thread thread = new Thread(r, "mirror-hedge-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.hedgeExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        hedgeExecutor.shutdownNow();
+    }
+
+    /**
+     * 所有 AList 请求都经过这里：按站点限制并发，熔断时直接失败，并记录耗时和结果
+     */
+    private <T> T call(Site site, Function<RestTemplate, T> request) {
+        SiteHealth health = siteHealthService.get(site);
+        if (!health.acquire()) {
+            throw new ServiceUnavailableException("站点" + site.getName() + "繁忙");
+        }
+        if (!health.allowRequest()) {
+            health.cancel();
+            throw new ServiceUnavailableException("站点" + site.getName() + "暂时不可用");
+        }
+
+        long start = System.currentTimeMillis();
+        boolean success = false;
+        try {
+            T result = request.apply(health.getRestTemplate());
+            success = true;
+            return result;
+        } catch (HttpClientErrorException e) {
+            // 4xx 说明站点能正常响应
+            success = true;
+            throw e;
+        } finally {
+            health.release(System.currentTimeMillis() - start, success);
+        }
     }
 
     public List<SearchResult> search(Site site, String keyword,int count) {
@@ -50,7 +114,7 @@ public class AListService {
         SearchRequest request = new SearchRequest();
         request.setPassword(site.getPassword());
         request.setKeywords(searchWord);
-        SearchListResponse response = restTemplate.postForObject(url, request, SearchListResponse.class);
+        SearchListResponse response = call(site, rest -> rest.postForObject(url, request, SearchListResponse.class));
         logError(response);
         log.debug("search \"{}\" from site {}:{} result: {}", searchWord, site.getId(), site.getName(), response.getData().getContent().size());
         List<SearchResult> list = response.getData().getContent().stream().filter(a -> a.getType() != 5).collect(Collectors.toList());
@@ -90,6 +154,13 @@ public class AListService {
     }
 
     public FsResponse listFiles(Site site, String path, int page, int size) {
+        if (listingStore.isEnabled()) {
+            return listingStore.getListing(site, path, page, size, () -> route(site, s -> fetchFiles(s, path, page, size)));
+        }
+        return route(site, s -> fetchFiles(s, path, page, size));
+    }
+
+    private FsResponse fetchFiles(Site site, String path, int page, int size) {
         int version = getVersion(site);
         String url = site.getUrl() + (version == 2 ? "/api/public/path" : "/api/fs/list");
         FsRequest request = new FsRequest();
@@ -99,7 +170,7 @@ public class AListService {
         request.setPage(page);
         request.setSize(size);
         log.debug("call api: {}", url);
-        FsListResponse response = restTemplate.postForObject(url, request, FsListResponse.class);
+        FsListResponse response = call(site, rest -> rest.postForObject(url, request, FsListResponse.class));
         logError(response);
         log.debug("list files: {} {}", path, response.getData());
         return getFiles(version, response.getData());
@@ -119,10 +190,129 @@ public class AListService {
     public String readFileContent(Site site, String path) {
         // TODO: fix it
         String url = site.getUrl() + "/p" + path;
-        return restTemplate.getForObject(url, String.class);
+        return call(site, rest -> rest.getForObject(url, String.class));
     }
 
     public FsDetail getFile(Site site, String path) {
+        if (listingStore.isEnabled()) {
+            return listingStore.getDetail(site, path, () -> route(site, s -> fetchFile(s, path)));
+        }
+        return route(site, s -> fetchFile(s, path));
+    }
+
+    /**
+     * 发给镜像组中延迟最低的站点。开启对冲时，超过该站点耗时分位数还没有返回就同时请求第二个镜像，使用先成功的结果；
+     * 第一个镜像失败时换第二个重试。
+     */
+    private <T> T route(Site site, Function<Site, T> request) {
+        List<Site> mirrors = mirrorRouter.select(site);
+        Site primary = mirrors.get(0);
+        if (mirrors.size() < 2) {
+            return request.apply(primary);
+        }
+
+        Site secondary = mirrors.get(1);
+        if (!appProperties.isMirrorHedge()) {
+            return failover(primary, secondary, request);
+        }
+        return hedge(primary, secondary, request);
+    }
+
+    private <T> T failover(Site primary, Site secondary, Function<Site, T> request) {
+        try {
+            return request.apply(primary);
+        } catch (ServiceUnavailableException | ResourceAccessException | HttpServerErrorException e) {
+            log.warn("site {} failed: {}, retry mirror {}", primary.getId(), e.getMessage(), secondary.getId());
+            mirrorRouter.onFailover();
+            return request.apply(secondary);
+        }
+    }
+
+    /**
+     * 对冲线程池满了就不对冲：主请求还没提交时在当前线程按普通方式请求，已经提交时只等待主请求
+     */
+    private <T> T hedge(Site primary, Site secondary, Function<Site, T> request) {
+        CompletionService<T> completionService = new ExecutorCompletionService<>(hedgeExecutor);
+        List<Future<T>> futures = new ArrayList<>();
+        try {
+            futures.add(completionService.submit(RequestPriority.inherit(() -> request.apply(primary))));
+        } catch (RejectedExecutionException e) {
+            mirrorRouter.onHedgeRejected();
+            return failover(primary, secondary, request);
+        }
+        try {
+            Future<T> done = completionService.poll(mirrorRouter.getHedgeDelay(primary), TimeUnit.MILLISECONDS);
+            if (done == null) {
+                try {
+                    futures.add(completionService.submit(RequestPriority.inherit(() -> request.apply(secondary))));
+                    mirrorRouter.onHedged();
+                } catch (RejectedExecutionException e) {
+                    mirrorRouter.onHedgeRejected();
+                }
+                done = completionService.take();
+            }
+            try {
+                return done.get();
+            } catch (ExecutionException e) {
+                if (futures.size() < 2) {
+                    if (!isSiteFailure(e.getCause())) {
+                        return getResult(done);
+                    }
+                    log.warn("site {} failed: {}, retry mirror {}", primary.getId(), e.getCause().getMessage(), secondary.getId());
+                    mirrorRouter.onFailover();
+                    return request.apply(secondary);
+                }
+                return getResult(completionService.take());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("request interrupted", e);
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+    }
+
+    /**
+     * 只有站点或网络故障才换镜像，4xx 和解析错误换了镜像也一样
+     */
+    private static boolean isSiteFailure(Throwable e) {
+        return e instanceof ServiceUnavailableException || e instanceof ResourceAccessException
+                || e instanceof HttpServerErrorException;
+    }
+
+    private static <T> T getResult(Future<T> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * 探测镜像组中的站点，用于选择延迟最低的镜像。直接使用站点的 RestTemplate，不占用并发许可，也不影响熔断状态
+     */
+    @Scheduled(initialDelayString = "${app.mirrorProbeDelay:10000}", fixedDelayString = "${app.mirrorProbeDelay:10000}")
+    public void probeMirrors() {
+        RequestPriority.background(() -> {
+            for (Site site : mirrorRouter.getMirrorSites()) {
+                String url = site.getUrl() + "/api/public/settings";
+                long start = System.currentTimeMillis();
+                boolean success = false;
+                try {
+                    siteHealthService.get(site).getRestTemplate().getForObject(url, String.class);
+                    success = true;
+                } catch (Exception e) {
+                    log.debug("probe site {} failed: {}", site.getId(), e.getMessage());
+                }
+                mirrorRouter.recordProbe(site, System.currentTimeMillis() - start, success);
+            }
+        });
+    }
+
+    private FsDetail fetchFile(Site site, String path) {
         int version = getVersion(site);
         if (version == 2) {
             return getFileV2(site, path);
@@ -139,10 +329,13 @@ public class AListService {
                 .replace("/.",""));
         log.debug("call api: {}", url);
         try {
-            FsDetailResponse response = restTemplate.postForObject(url, request, FsDetailResponse.class);
+            FsDetailResponse response = call(site, rest -> rest.postForObject(url, request, FsDetailResponse.class));
             logError(response);
             log.debug("get file: {} {}", path, response.getData());
             return response.getData();
+        } catch (ServiceUnavailableException | ResourceAccessException | HttpServerErrorException e) {
+            // 站点或网络故障交给 route 换镜像重试
+            throw e;
         }catch (Exception e){
             if(path.contains("/./") && !redisService.ignores.contains(path.replace("/.",""))){
                 redisService.ignores.add(path.replace("/.",""));
@@ -157,7 +350,7 @@ public class AListService {
         request.setPassword(site.getPassword());
         request.setPath(path);
         log.debug("call api: {}", url);
-        FsListResponseV2 response = restTemplate.postForObject(url, request, FsListResponseV2.class);
+        FsListResponseV2 response = call(site, rest -> rest.postForObject(url, request, FsListResponseV2.class));
         logError(response);
         FsInfoV2 fsInfo = Optional.ofNullable(response)
                 .map(Response::getData)
@@ -183,10 +376,15 @@ public class AListService {
         if (site.getVersion() != null) {
             return site.getVersion();
         }
+        // 调用方可能持有检测版本之前的站点对象；站点已经被删除时重新检测
+        Integer known = siteService.findById(site.getId()).map(Site::getVersion).orElse(null);
+        if (known != null) {
+            return known;
+        }
 
         String url = site.getUrl() + "/api/public/settings";
         log.debug("call api: {}", url);
-        String text = restTemplate.getForObject(url, String.class);
+        String text = call(site, rest -> rest.getForObject(url, String.class));
         int version;
         if (text != null && VERSION.matcher(text).find()) {
             version = 3;
@@ -194,8 +392,7 @@ public class AListService {
             version = 2;
         }
         log.info("site {}:{} version: {}", site.getId(), site.getName(), version);
-        site.setVersion(version);
-        siteService.save(site);
+        siteService.updateVersion(site.getId(), version);
 
         return version;
     }
@@ -0,0 +1,135 @@
+package cn.har01d.alist_tvbox.service;
+
+import cn.har01d.alist_tvbox.config.AppProperties;
+import cn.har01d.alist_tvbox.util.RequestPriority;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 缓存后台刷新。线程数和队列长度有上限，同一个 key 同时只会刷新一次，
+ * 可选通过 Redis 锁在多个节点之间去重。
+ */
+@Slf4j
+@Service
+public class CacheRefreshService {
+    private static final String LOCK_PREFIX = "lock:refresh:";
+
+    private final IRedisService redisService;
+    private final AppProperties appProperties;
+    private final ThreadPoolExecutor executor;
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong deduplicated = new AtomicLong();
+    private final AtomicLong totalTime = new AtomicLong();
+    private final AtomicLong maxTime = new AtomicLong();
+
+    public CacheRefreshService(IRedisService redisService, AppProperties appProperties) {
+        this.redisService = redisService;
+        this.appProperties = appProperties;
+        int threads = Math.max(1, appProperties.getCacheRefreshThreads());
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, appProperties.getCacheRefreshQueueSize())),
+                r -> {
+                    Thread thread = new Thread(r, "cache-refresh-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return 是否提交成功，key 正在刷新或者队列已满时返回 false
+     */
+    public boolean submit(String key, Runnable task) {
+        if (!inFlight.add(key)) {
+            deduplicated.incrementAndGet();
+            return false;
+        }
+
+        try {
+            executor.execute(() -> refresh(key, task));
+            submitted.incrementAndGet();
+            return true;
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(key);
+            rejected.incrementAndGet();
+            log.warn("cache refresh queue is full, skip {}", key);
+            return false;
+        }
+    }
+
+    private void refresh(String key, Runnable task) {
+        String lockKey = LOCK_PREFIX + key;
+        String requestId = null;
+        try {
+            if (appProperties.isCacheRefreshLock() && redisService.isAvailable()) {
+                requestId = UUID.randomUUID().toString();
+                if (!redisService.tryLock(lockKey, requestId, 60, TimeUnit.SECONDS, 0)) {
+                    requestId = null;
+                    deduplicated.incrementAndGet();
+                    log.debug("{} is refreshing by other node", key);
+                    return;
+                }
+            }
+
+            long start = System.nanoTime();
+            RequestPriority.background(task);
+            long time = System.nanoTime() - start;
+            totalTime.addAndGet(time);
+            maxTime.accumulateAndGet(time, Math::max);
+            completed.incrementAndGet();
+            log.debug("refresh cache {} in {}ms", key, TimeUnit.NANOSECONDS.toMillis(time));
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            log.warn("refresh cache {} failed", key, e);
+        } finally {
+            if (requestId != null) {
+                try {
+                    redisService.releaseLock(lockKey, requestId);
+                } catch (Exception e) {
+                    log.warn("release lock {} failed: {}", lockKey, e.getMessage());
+                }
+            }
+            inFlight.remove(key);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long done = completed.get();
+        stats.put("queue", executor.getQueue().size());
+        stats.put("active", executor.getActiveCount());
+        stats.put("inFlight", inFlight.size());
+        stats.put("submitted", submitted.get());
+        stats.put("completed", done);
+        stats.put("failed", failed.get());
+        stats.put("rejected", rejected.get());
+        stats.put("deduplicated", deduplicated.get());
+        stats.put("avgTimeMs", done == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalTime.get() / done));
+        stats.put("maxTimeMs", TimeUnit.NANOSECONDS.toMillis(maxTime.get()));
+        return stats;
+    }
+}
@@ -0,0 +1,170 @@
+package cn.har01d.alist_tvbox.service;
+
+import cn.har01d.alist_tvbox.config.AppProperties;
+import cn.har01d.alist_tvbox.model.CacheEntry;
+import cn.har01d.alist_tvbox.model.DirectorySnapshot;
+import cn.har01d.alist_tvbox.tvbox.MovieDetail;
+import cn.har01d.alist_tvbox.util.LocalCache;
+import com.alibaba.fastjson2.JSONB;
+import com.alibaba.fastjson2.JSONObject;
+import com.alibaba.fastjson2.JSONReader;
+import com.alibaba.fastjson2.JSONWriter;
+import com.alibaba.fastjson2.filter.Filter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 把本地缓存(详情一级缓存和目录快照)保存到 ~/.config/atv/local-cache.bin，启动时恢复，重启后不用重新请求 AList。
+ * 正常关闭和定时保存，读取时丢弃已经过期的条目。
+ * <p>
+ * 文件格式(deflate 压缩): 魔数 版本 {分区 数量 {key 过期时间 内容}} 结束分区，内容是 fastjson2 JSONB。
+ */
+@Slf4j
+@Service
+public class CacheSnapshotService {
+    private static final int MAGIC = 0x41545643;
+    private static final int VERSION = 1;
+    private static final String LOCAL = "local";
+    private static final String DIRECTORY = "directory";
+    private static final String END = "";
+    /**
+     * 文件可能被替换，只允许反序列化项目中的模型类和它们用到的集合
+     */
+    private static final Filter AUTO_TYPE_FILTER = JSONReader.autoTypeFilter(
+            "cn.har01d.alist_tvbox.model.", "cn.har01d.alist_tvbox.tvbox.",
+            "java.util.ArrayList", "java.util.HashMap", "java.util.LinkedHashMap");
+
+    private final LocalCacheService localCacheService;
+    private final DirectorySnapshotService directorySnapshotService;
+    private final AppProperties appProperties;
+    private final File file = new File(System.getProperty("user.home"), ".config/atv/local-cache.bin");
+
+    public CacheSnapshotService(LocalCacheService localCacheService, DirectorySnapshotService directorySnapshotService, AppProperties appProperties) {
+        this.localCacheService = localCacheService;
+        this.directorySnapshotService = directorySnapshotService;
+        this.appProperties = appProperties;
+    }
+
+    @PostConstruct
+    public void load() {
+        if (!appProperties.isCacheSnapshot() || !file.exists()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        int count = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(Files.newInputStream(file.toPath()))))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                log.warn("ignore cache snapshot {}: unknown format", file);
+                return;
+            }
+            long now = System.currentTimeMillis();
+            String section;
+            while (!END.equals(section = in.readUTF())) {
+                int size = in.readInt();
+                for (int i = 0; i < size; i++) {
+                    String key = in.readUTF();
+                    long expireAt = in.readLong();
+                    byte[] data = new byte[in.readInt()];
+                    in.readFully(data);
+                    if (expireAt > 0 && expireAt <= now) {
+                        continue;
+                    }
+                    if (LOCAL.equals(section)) {
+                        localCacheService.restore(key, JSONB.parseObject(data, Object.class, AUTO_TYPE_FILTER), expireAt);
+                        count++;
+                    } else if (DIRECTORY.equals(section)) {
+                        directorySnapshotService.restore(key, readSnapshot(data), expireAt);
+                        count++;
+                    }
+                }
+            }
+            log.info("load {} cache entries from {} in {}ms", count, file, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.warn("load cache snapshot failed", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        save();
+    }
+
+    @Scheduled(initialDelayString = "${app.cacheSnapshotDelay:600000}", fixedDelayString = "${app.cacheSnapshotDelay:600000}")
+    public synchronized void save() {
+        if (!appProperties.isCacheSnapshot()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        File temp = new File(file.getPath() + ".tmp");
+        try {
+            Files.createDirectories(file.getParentFile().toPath());
+            int count = 0;
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(Files.newOutputStream(temp.toPath()))))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+
+                List<LocalCache.Entry<String, Object>> local = localCacheService.entries();
+                local.removeIf(entry -> entry.getValue() == CacheEntry.EMPTY);
+                out.writeUTF(LOCAL);
+                out.writeInt(local.size());
+                for (LocalCache.Entry<String, Object> entry : local) {
+                    write(out, entry.getKey(), entry.getExpireAt(), JSONB.toBytes(entry.getValue(), JSONWriter.Feature.WriteClassName));
+                }
+
+                List<LocalCache.Entry<String, DirectorySnapshot>> directories = directorySnapshotService.entries();
+                out.writeUTF(DIRECTORY);
+                out.writeInt(directories.size());
+                for (LocalCache.Entry<String, DirectorySnapshot> entry : directories) {
+                    write(out, entry.getKey(), entry.getExpireAt(), writeSnapshot(entry.getValue()));
+                }
+
+                out.writeUTF(END);
+                count = local.size() + directories.size();
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("save {} cache entries to {} in {}ms", count, file, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.warn("save cache snapshot failed", e);
+            temp.delete();
+        }
+    }
+
+    private static void write(DataOutputStream out, String key, long expireAt, byte[] data) throws IOException {
+        out.writeUTF(key);
+        out.writeLong(expireAt);
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    private static byte[] writeSnapshot(DirectorySnapshot snapshot) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("createdAt", snapshot.getCreatedAt());
+        data.put("folders", snapshot.getFolders());
+        data.put("files", snapshot.getFiles());
+        data.put("playlists", snapshot.getPlaylists());
+        return JSONB.toBytes(data);
+    }
+
+    private static DirectorySnapshot readSnapshot(byte[] bytes) {
+        JSONObject data = JSONB.parseObject(bytes);
+        return new DirectorySnapshot(data.getList("folders", MovieDetail.class), data.getList("files", MovieDetail.class),
+                data.getList("playlists", MovieDetail.class), data.getLongValue("createdAt"));
+    }
+}
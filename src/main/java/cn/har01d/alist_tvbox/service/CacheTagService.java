@@ -0,0 +1,128 @@
+package cn.har01d.alist_tvbox.service;
+
+import cn.har01d.alist_tvbox.exception.NotFoundException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 缓存标签。写入缓存时把 key 登记到站点和路径前缀的集合中，
+ * 站点修改或者目录变化时按标签删除相关的缓存，不需要清空整个 Redis。
+ */
+@Slf4j
+@Service
+public class CacheTagService {
+    private static final String SITE_TAG = "cachetag:site:";
+    private static final String PATH_TAG = "cachetag:path:";
+    private static final int BATCH_SIZE = 500;
+    private static final long EXPIRE = 60 * 60 * 24 * 3;
+
+    private final IRedisService redisService;
+    private final LocalCacheService localCacheService;
+    private final DirectorySnapshotService directorySnapshotService;
+    private final SiteService siteService;
+
+    public CacheTagService(IRedisService redisService, LocalCacheService localCacheService,
+                           DirectorySnapshotService directorySnapshotService, SiteService siteService) {
+        this.redisService = redisService;
+        this.localCacheService = localCacheService;
+        this.directorySnapshotService = directorySnapshotService;
+        this.siteService = siteService;
+    }
+
+    /**
+     * @param tid siteId$path 或者 siteName$path
+     */
+    public void register(String key, String tid) {
+        redisService.multiSSetAndTime(getTags(tid), EXPIRE, key);
+    }
+
+    /**
+     * 站点标签和每一级父目录的标签，站点名称转换为 id，和按 id 失效时使用的标签一致
+     */
+    public List<String> getTags(String tid) {
+        List<String> tags = new ArrayList<>();
+        int index = tid == null ? -1 : tid.indexOf('$');
+        if (index <= 0) {
+            return tags;
+        }
+        String siteId = getSiteId(tid.substring(0, index));
+        if (siteId == null) {
+            return tags;
+        }
+        tags.add(SITE_TAG + siteId);
+        String path = normalize(tid.substring(index + 1));
+        int start = 1;
+        while (start < path.length()) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = path.length();
+            }
+            tags.add(PATH_TAG + siteId + ":" + path.substring(0, end));
+            start = end + 1;
+        }
+        return tags;
+    }
+
+    @EventListener
+    public void onSiteChanged(SiteChangedEvent event) {
+        invalidate(event.getSiteId(), null);
+    }
+
+    /**
+     * 删除目录及其子目录的缓存，path 为空时删除整个站点的缓存
+     *
+     * @return 删除的缓存数量
+     */
+    public int invalidate(int siteId, String path) {
+        path = normalize(path);
+        String tag = path.length() <= 1 ? SITE_TAG + siteId : PATH_TAG + siteId + ":" + path;
+        List<String> keys = new ArrayList<>();
+        Set<Object> members = redisService.sGet(tag);
+        if (members != null) {
+            for (Object member : members) {
+                keys.add(String.valueOf(member));
+            }
+        }
+
+        List<String> all = new ArrayList<>(keys);
+        all.add(tag);
+        long deleted = redisService.multiDel(all);
+        for (int i = 0; i < keys.size(); i += BATCH_SIZE) {
+            localCacheService.invalidate(keys.subList(i, Math.min(keys.size(), i + BATCH_SIZE)));
+        }
+        int snapshots = directorySnapshotService.evict(siteId, path.length() <= 1 ? null : path);
+        log.info("invalidate cache {}: {} keys, {} deleted, {} snapshots", tag, keys.size(), deleted, snapshots);
+        return keys.size();
+    }
+
+    private String getSiteId(String id) {
+        try {
+            return String.valueOf(Integer.parseInt(id));
+        } catch (NumberFormatException e) {
+            // ignore
+        }
+        try {
+            return String.valueOf(siteService.getByName(id).getId());
+        } catch (NotFoundException e) {
+            return null;
+        }
+    }
+
+    private static String normalize(String path) {
+        if (path == null || path.isEmpty()) {
+            return "/";
+        }
+        if (!path.startsWith("/")) {
+            path = "/" + path;
+        }
+        while (path.length() > 1 && path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        return path;
+    }
+}
@@ -0,0 +1,79 @@
+package cn.har01d.alist_tvbox.service;
+
+import cn.har01d.alist_tvbox.aop.CacheContext;
+import cn.har01d.alist_tvbox.config.AppProperties;
+import cn.har01d.alist_tvbox.util.RequestPriority;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按访问热度定时预热缓存：热门条目的详情在软过期之前刷新，热门目录的快照在过期之前重新加载。
+ * 详情缓存在 Redis 中共享，每个周期只由一个节点预热；目录快照在每个节点本地，各自预热。
+ */
+@Slf4j
+@Service
+public class CacheWarmerService {
+    private static final String LOCK_KEY = "lock:warmer";
+
+    private final PopularityService popularityService;
+    private final TvBoxService tvBoxService;
+    private final IRedisService redisService;
+    private final AppProperties appProperties;
+
+    public CacheWarmerService(PopularityService popularityService, TvBoxService tvBoxService, IRedisService redisService, AppProperties appProperties) {
+        this.popularityService = popularityService;
+        this.tvBoxService = tvBoxService;
+        this.redisService = redisService;
+        this.appProperties = appProperties;
+    }
+
+    @Scheduled(initialDelayString = "${app.warmerDelay:300000}", fixedDelayString = "${app.warmerDelay:300000}")
+    public void warm() {
+        int size = appProperties.getWarmerSize();
+        if (size <= 0 || !redisService.isAvailable()) {
+            return;
+        }
+        // 预热只使用站点空闲的并发，不影响用户的请求
+        RequestPriority.background(() -> warm(size));
+    }
+
+    private void warm(int size) {
+        long start = System.currentTimeMillis();
+        // 下一次运行之前会过期的都需要刷新
+        long ahead = appProperties.getWarmerDelay() + 60_000L;
+        Map<String, List<String>> top = popularityService.getTop(size);
+
+        int movieLists = 0;
+        for (String tid : top.get(PopularityService.LISTING)) {
+            try {
+                if (tvBoxService.warmMovieList(tid, ahead)) {
+                    movieLists++;
+                }
+            } catch (Exception e) {
+                log.debug("warm movie list {} failed: {}", tid, e.getMessage());
+            }
+        }
+
+        int details = 0;
+        String requestId = UUID.randomUUID().toString();
+        // 锁不主动释放，过期前其它节点不会重复预热
+        if (redisService.tryLock(LOCK_KEY, requestId, Math.max(1000, appProperties.getWarmerDelay() - 1000), TimeUnit.MILLISECONDS, 0)) {
+            for (String tid : top.get(PopularityService.DETAIL)) {
+                try {
+                    CacheContext.refreshAhead(ahead, () -> tvBoxService.getDetail(tid));
+                    details++;
+                } catch (Exception e) {
+                    log.debug("warm detail {} failed: {}", tid, e.getMessage());
+                }
+            }
+        }
+
+        log.info("warm cache: {} movie lists, {} details in {}ms", movieLists, details, System.currentTimeMillis() - start);
+    }
+}
@@ -0,0 +1,106 @@
+package cn.har01d.alist_tvbox.service;
+
+import cn.har01d.alist_tvbox.entity.Site;
+import cn.har01d.alist_tvbox.model.FsDetail;
+import cn.har01d.alist_tvbox.model.FsInfo;
+import cn.har01d.alist_tvbox.model.FsResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+/**
+ * 解析目录的名字、修改时间等元数据。
+ * 优先从已经获取过的父目录列表中取，避免为了目录名字再单独调用一次 getFile。
+ */
+@Slf4j
+@Service
+public class DirectoryMetadataResolver {
+    private final AListService aListService;
+
+    public DirectoryMetadataResolver(AListService aListService) {
+        this.aListService = aListService;
+    }
+
+    public FsResponse listFiles(ListingMemo memo, Site site, String path) {
+        FsResponse response = memo.getListing(site, path);
+        if (response == null) {
+            response = aListService.listFiles(site, path, 1, 0);
+            memo.putListing(site, path, response);
+        }
+        return response;
+    }
+
+    public FsDetail getDirectory(ListingMemo memo, Site site, String path) {
+        FsDetail fsDetail = fromParentListing(memo, site, path);
+        if (fsDetail != null) {
+            return fsDetail;
+        }
+        return getFile(memo, site, path);
+    }
+
+    /**
+     * 不含直链的文件信息。这次请求已经列出过父目录时直接使用，否则调用 getFile，
+     * 不会为了一个文件列出整个父目录
+     */
+    public FsDetail getFileInfo(ListingMemo memo, Site site, String path) {
+        FsDetail fsDetail = fromParentListing(memo, site, path);
+        if (fsDetail != null) {
+            return fsDetail;
+        }
+        fsDetail = getFile(memo, site, path);
+        if (fsDetail == null) {
+            return null;
+        }
+        // 结果可能是缓存中的对象，复制后去掉直链
+        FsDetail info = new FsDetail();
+        info.setName(fsDetail.getName());
+        info.setType(fsDetail.getType());
+        info.setDir(fsDetail.isDir());
+        info.setModified(fsDetail.getModified());
+        info.setSize(fsDetail.getSize());
+        info.setThumb(fsDetail.getThumb());
+        info.setProvider(fsDetail.getProvider());
+        return info;
+    }
+
+    public FsDetail getFile(ListingMemo memo, Site site, String path) {
+        if (memo.hasDetail(site, path)) {
+            return memo.getDetail(site, path);
+        }
+        FsDetail fsDetail = aListService.getFile(site, path);
+        memo.putDetail(site, path, fsDetail);
+        return fsDetail;
+    }
+
+    private FsDetail fromParentListing(ListingMemo memo, Site site, String path) {
+        int index = path.lastIndexOf('/');
+        if (index < 0 || index == path.length() - 1) {
+            return null;
+        }
+
+        FsResponse parent = memo.getListing(site, index == 0 ? "/" : path.substring(0, index));
+        if (parent == null || parent.getFiles() == null) {
+            return null;
+        }
+
+        String name = path.substring(index + 1);
+        for (FsInfo fsInfo : parent.getFiles()) {
+            if (name.equals(fsInfo.getName())) {
+                log.debug("resolve {} from parent listing", path);
+                return toDetail(fsInfo, parent.getProvider());
+            }
+        }
+        return null;
+    }
+
+    static FsDetail toDetail(FsInfo fsInfo, String provider) {
+        FsDetail fsDetail = new FsDetail();
+        fsDetail.setName(fsInfo.getName());
+        fsDetail.setType(fsInfo.getType());
+        fsDetail.setDir(fsInfo.getType() == 1);
+        fsDetail.setModified(fsInfo.getModified());
+        fsDetail.setSize(fsInfo.getSize());
+        fsDetail.setThumb(fsInfo.getThumb());
+        fsDetail.setProvider(provider);
+        return fsDetail;
+    }
+}
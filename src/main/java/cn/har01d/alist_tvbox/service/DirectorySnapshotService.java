@@ -0,0 +1,290 @@
+package cn.har01d.alist_tvbox.service;
+
+import cn.har01d.alist_tvbox.config.AppProperties;
+import cn.har01d.alist_tvbox.entity.Site;
+import cn.har01d.alist_tvbox.model.DirectorySnapshot;
+import cn.har01d.alist_tvbox.model.FsInfo;
+import cn.har01d.alist_tvbox.model.FsResponse;
+import cn.har01d.alist_tvbox.tvbox.MovieDetail;
+import cn.har01d.alist_tvbox.util.LocalCache;
+import cn.har01d.alist_tvbox.util.RequestPriority;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static cn.har01d.alist_tvbox.util.Constants.*;
+import static cn.har01d.alist_tvbox.util.ListingUtils.fileSize;
+import static cn.har01d.alist_tvbox.util.ListingUtils.fixPath;
+import static cn.har01d.alist_tvbox.util.ListingUtils.getCover;
+
+/**
+ * 目录快照：一次获取目录的所有分页，按媒体类型过滤后缓存在内存中，
+ * 排序和分页都在快照上完成。
+ */
+@Slf4j
+@Service
+public class DirectorySnapshotService {
+    private final AListService aListService;
+    private final AppProperties appProperties;
+    private final LocalCache<String, DirectorySnapshot> cache;
+    private final Map<String, CompletableFuture<DirectorySnapshot>> loading = new ConcurrentHashMap<>();
+    private final ExecutorService executorService;
+
+    public DirectorySnapshotService(AListService aListService, AppProperties appProperties) {
+        this.aListService = aListService;
+        this.appProperties = appProperties;
+        this.cache = new LocalCache<>(appProperties.getSnapshotCacheSize());
+        AtomicInteger count = new AtomicInteger();
+        this.executorService = Executors.newFixedThreadPool(4, r -> {
+            Thread thread = new Thread(r, "directory-snapshot-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executorService.shutdownNow();
+    }
+
+    public DirectorySnapshot getSnapshot(Site site, String path) {
+        String key = site.getId() + "$" + path;
+        DirectorySnapshot snapshot = cache.get(key);
+        if (snapshot != null) {
+            return snapshot;
+        }
+        return loadAndCache(key, site, path);
+    }
+
+    /**
+     * 快照不存在或者在 ahead 毫秒内过期时重新加载，加载期间请求仍然使用旧的快照
+     *
+     * @return 是否重新加载
+     */
+    public boolean warm(Site site, String path, long ahead) {
+        String key = site.getId() + "$" + path;
+        DirectorySnapshot snapshot = cache.get(key);
+        long expireAt = snapshot == null ? 0 : snapshot.getCreatedAt() + appProperties.getSnapshotExpire() * 1000L;
+        if (expireAt - ahead > System.currentTimeMillis()) {
+            return false;
+        }
+        loadAndCache(key, site, path);
+        return true;
+    }
+
+    private DirectorySnapshot loadAndCache(String key, Site site, String path) {
+        CompletableFuture<DirectorySnapshot> future = new CompletableFuture<>();
+        CompletableFuture<DirectorySnapshot> existing = loading.putIfAbsent(key, future);
+        if (existing != null) {
+            return join(existing);
+        }
+
+        try {
+            DirectorySnapshot snapshot = load(site, path);
+            cache.put(key, snapshot, appProperties.getSnapshotExpire() * 1000L);
+            future.complete(snapshot);
+            return snapshot;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key);
+        }
+    }
+
+    public List<LocalCache.Entry<String, DirectorySnapshot>> entries() {
+        return cache.entries();
+    }
+
+    public void restore(String key, DirectorySnapshot snapshot, long expireAt) {
+        cache.putUntil(key, snapshot, expireAt);
+    }
+
+    public void evict(Site site, String path) {
+        cache.remove(site.getId() + "$" + path);
+    }
+
+    /**
+     * 删除目录及其子目录的快照，path 为空时删除整个站点
+     */
+    public int evict(Integer siteId, String path) {
+        String prefix = siteId + "$" + (path == null ? "" : path);
+        return cache.removeIf(key -> key.startsWith(prefix)
+                && (key.length() == prefix.length() || prefix.endsWith("/") || key.charAt(prefix.length()) == '/'));
+    }
+
+    private DirectorySnapshot join(CompletableFuture<DirectorySnapshot> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 没有缓存时返回 null，不会请求 AList
+     */
+    public DirectorySnapshot getCached(Site site, String path) {
+        return cache.get(site.getId() + "$" + path);
+    }
+
+    private DirectorySnapshot load(Site site, String path) {
+        return build(site, path, listAll(site, path));
+    }
+
+    DirectorySnapshot build(Site site, String path, List<FsInfo> all) {
+        List<MovieDetail> folders = new ArrayList<>();
+        List<MovieDetail> files = new ArrayList<>();
+        List<MovieDetail> playlists = new ArrayList<>();
+
+        for (FsInfo fsInfo : all) {
+            if (fsInfo.getType() != 1 && fsInfo.getName().equals(PLAYLIST_TXT)) {
+                playlists = generatePlaylistFromFile(site, path + "/" + PLAYLIST_TXT);
+                continue;
+            }
+            if (fsInfo.getType() != 1 && !isMediaFormat(fsInfo.getName())) {
+                continue;
+            }
+
+            MovieDetail movieDetail = new MovieDetail();
+            movieDetail.setVod_id(site.getId() + "$" + fixPath(path + "/" + fsInfo.getName()));
+            movieDetail.setVod_name(fsInfo.getName());
+            movieDetail.setVod_tag(fsInfo.getType() == 1 ? FOLDER : FILE);
+            movieDetail.setVod_pic(getCover(fsInfo.getThumb(), fsInfo.getType()));
+            movieDetail.setVod_remarks(fileSize(fsInfo.getSize()) + (fsInfo.getType() == 1 ? "文件夹" : ""));
+            movieDetail.setVod_time(fsInfo.getModified());
+            movieDetail.setSize(fsInfo.getSize());
+            if (fsInfo.getType() == 1) {
+                folders.add(movieDetail);
+            } else {
+                files.add(movieDetail);
+            }
+        }
+
+        if (files.size() > 1 && playlists.isEmpty()) {
+            playlists.add(generatePlaylist(site.getId() + "$" + fixPath(path + PLAYLIST), files.size()));
+        }
+
+        log.debug("snapshot {}:{} {} folders: {} files: {}", site.getId(), site.getName(), path, folders.size(), files.size());
+        return new DirectorySnapshot(folders, files, playlists);
+    }
+
+    /**
+     * 第一页确定总数后，剩下的分页并发获取
+     */
+    private List<FsInfo> listAll(Site site, String path) {
+        int size = appProperties.getSnapshotPageSize();
+        FsResponse first = aListService.listFiles(site, path, 1, size);
+        List<FsInfo> all = new ArrayList<>(first.getFiles());
+        int pages = (first.getTotal() + size - 1) / size;
+        if (pages <= 1 || first.getFiles().size() >= first.getTotal()) {
+            return all;
+        }
+
+        List<Future<FsResponse>> futures = new ArrayList<>();
+        for (int page = 2; page <= pages; page++) {
+            int current = page;
+            futures.add(executorService.submit(RequestPriority.inherit(() -> aListService.listFiles(site, path, current, size))));
+        }
+
+        try {
+            for (Future<FsResponse> future : futures) {
+                all.addAll(future.get().getFiles());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(f -> f.cancel(true));
+            throw new IllegalStateException("list files interrupted", e);
+        } catch (ExecutionException e) {
+            futures.forEach(f -> f.cancel(true));
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        log.debug("list {} pages of {}: {}", pages, path, all.size());
+        return all;
+    }
+
+    private List<MovieDetail> generatePlaylistFromFile(Site site, String path) {
+        List<MovieDetail> list = new ArrayList<>();
+        String content = aListService.readFileContent(site, path);
+        if (content != null) {
+            int count = 0;
+            MovieDetail movieDetail = new MovieDetail();
+            movieDetail.setVod_id(site.getId() + "$" + path + "#" + 0);
+            movieDetail.setVod_name("播放列表");
+            movieDetail.setVod_tag(FILE);
+            movieDetail.setVod_pic(LIST_PIC);
+
+            for (String line : content.split("[\r\n]")) {
+                String text = line.trim();
+                if (text.isEmpty() || text.startsWith("#")) {
+                    if (text.startsWith("#cover")) {
+                        movieDetail.setVod_pic(text.substring("#cover".length()).trim());
+                    }
+                    continue;
+                }
+                if (text.contains(",#genre#")) {
+                    if (count > 0) {
+                        movieDetail.setVod_remarks("共" + count + "集");
+                        list.add(movieDetail);
+                    }
+                    count = 0;
+                    String[] parts = text.split(",");
+                    movieDetail = new MovieDetail();
+                    movieDetail.setVod_id(site.getId() + "$" + path + "#" + list.size());
+                    movieDetail.setVod_name(parts[0]);
+                    movieDetail.setVod_tag(FILE);
+                    movieDetail.setVod_pic(parts.length == 3 ? parts[2].trim() : LIST_PIC);
+                } else {
+                    count++;
+                }
+            }
+
+            if (count > 0) {
+                movieDetail.setVod_remarks("共" + count + "集");
+                list.add(movieDetail);
+            }
+        }
+
+        return list;
+    }
+
+    private MovieDetail generatePlaylist(String path, int count) {
+        MovieDetail movieDetail = new MovieDetail();
+        movieDetail.setVod_id(path);
+        movieDetail.setVod_name("播放列表");
+        movieDetail.setVod_tag(FILE);
+        movieDetail.setVod_pic(LIST_PIC);
+        movieDetail.setVod_remarks("共" + count + "集");
+        return movieDetail;
+    }
+
+    /**
+     * 文件后缀在 app.formats 中
+     */
+    public boolean isMediaFormat(String name) {
+        int index = name.lastIndexOf('.');
+        if (index > 0) {
+            String suffix = name.substring(index + 1);
+            return appProperties.getFormats().contains(suffix);
+        }
+        return false;
+    }
+}
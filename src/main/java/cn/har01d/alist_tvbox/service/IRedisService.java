@@ -93,6 +93,24 @@ public interface IRedisService {
      */
     void del(String... key);
 
+    /**
+     * 发布消息
+     *
+     * @param channel 频道
+     * @param message 消息
+     */
+    void publish(String channel, Object message);
+
+    /**
+     * Redis 是否可用，熔断打开时返回 false，读写走本地缓存
+     */
+    boolean isAvailable();
+
+    /**
+     * 熔断器状态
+     */
+    Map<String, Object> getStats();
+
     // ============================String=============================
 
     /**
@@ -664,4 +682,66 @@ public interface IRedisService {
      * @return
      */
     Long intersectAndStore(String key, Collection<String> otherKeys, String destKey);
+
+    // ============================pipeline=============================
+
+    /**
+     * 批量获取，一次请求
+     *
+     * @param keys 键
+     * @return 和 keys 顺序一致，不存在的为 null
+     */
+    List<Object> multiGet(List<String> keys);
+
+    /**
+     * 批量放入并设置时间，使用 pipeline 一次发送
+     *
+     * @param map  键值
+     * @param time 时间(秒) 小于等于0 不过期
+     */
+    void multiSet(Map<String, Object> map, long time);
+
+    /**
+     * 批量删除，使用 pipeline 每批一个 DEL
+     *
+     * @param keys 键
+     * @return 删除的个数
+     */
+    long multiDel(Collection<String> keys);
+
+    /**
+     * 把同一个值放入多个 set 并设置时间，使用 pipeline 一次发送
+     *
+     * @param keys  键
+     * @param time  时间(秒)
+     * @param value 值
+     */
+    void multiSSetAndTime(Collection<String> keys, long time, Object value);
+
+    /**
+     * 批量增减 zset 中多个值的 score，使用 pipeline 一次发送
+     *
+     * @param key    键
+     * @param scores 值和增量
+     */
+    void batchIncrementScore(String key, Map<Object, Double> scores);
+
+    /**
+     * 批量获取多个 zset 的倒序区间，使用 pipeline 一次发送
+     *
+     * @param keys  键
+     * @param start 开始位置
+     * @param end   结束位置, -1查询所有
+     * @return 和 keys 顺序一致
+     */
+    List<Set<ZSetOperations.TypedTuple<Object>>> batchReverseRangeWithScores(List<String> keys, long start, long end);
+
+    /**
+     * zset 所有 score 乘以 factor，用于热度衰减
+     *
+     * @param key    键
+     * @param factor 系数
+     * @return 元素个数
+     */
+    Long scaleZset(String key, double factor);
 }
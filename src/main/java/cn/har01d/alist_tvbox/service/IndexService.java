@@ -81,10 +81,13 @@ public class IndexService {
         }
     }
 
-    public String downloadIndexFile(Site site, boolean update) throws IOException {
+    /**
+     * 索引文件在本地的位置，不下载，文件可能还不存在
+     */
+    public File getLocalIndexFile(Site site) {
         String url = site.getIndexFile();
         if (!url.startsWith("http")) {
-            return url;
+            return new File(url);
         }
 
         String name = getIndexFileName(url);
@@ -92,8 +95,17 @@ public class IndexService {
         if (name.endsWith(".zip")) {
             filename = name.substring(0, name.length() - 4) + ".txt";
         }
+        return new File(".cache/" + site.getId() + "/" + filename);
+    }
+
+    public String downloadIndexFile(Site site, boolean update) throws IOException {
+        String url = site.getIndexFile();
+        if (!url.startsWith("http")) {
+            return url;
+        }
 
-        File file = new File(".cache/" + site.getId() + "/" + filename);
+        String name = getIndexFileName(url);
+        File file = getLocalIndexFile(site);
         if (!update && file.exists()) {
             return file.getAbsolutePath();
         }
@@ -0,0 +1,173 @@
+package cn.har01d.alist_tvbox.service;
+
+import cn.har01d.alist_tvbox.config.AppProperties;
+import cn.har01d.alist_tvbox.entity.Site;
+import cn.har01d.alist_tvbox.model.DirectorySnapshot;
+import cn.har01d.alist_tvbox.model.FsInfo;
+import cn.har01d.alist_tvbox.model.IndexTree;
+import cn.har01d.alist_tvbox.util.LocalCache;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static cn.har01d.alist_tvbox.util.Constants.PLAYLIST_TXT;
+
+/**
+ * 用站点的索引文件回答目录列表。AList 很慢或者不可用时作为降级，
+ * 站点开启 indexBrowse 时作为主要数据源。索引文件更新后重新构建目录树。
+ */
+@Slf4j
+@Service
+public class IndexTreeService {
+    private final IndexService indexService;
+    private final DirectorySnapshotService directorySnapshotService;
+    private final Map<Integer, Holder> trees = new ConcurrentHashMap<>();
+    private final Map<Integer, Object> locks = new ConcurrentHashMap<>();
+    private final LocalCache<String, DirectorySnapshot> cache;
+
+    public IndexTreeService(IndexService indexService, DirectorySnapshotService directorySnapshotService, AppProperties appProperties) {
+        this.indexService = indexService;
+        this.directorySnapshotService = directorySnapshotService;
+        this.cache = new LocalCache<>(appProperties.getSnapshotCacheSize());
+    }
+
+    public boolean hasIndex(Site site) {
+        return StringUtils.isNotBlank(site.getIndexFile());
+    }
+
+    /**
+     * @return 没有索引文件、索引文件还没有下载或者索引中没有这个目录时返回 null
+     */
+    public DirectorySnapshot getSnapshot(Site site, String path) {
+        if (!hasIndex(site)) {
+            return null;
+        }
+
+        IndexTree tree;
+        try {
+            tree = getTree(site);
+        } catch (IOException e) {
+            log.warn("load index file of site {} failed: {}", site.getId(), e.getMessage());
+            return null;
+        }
+        if (tree == null) {
+            return null;
+        }
+
+        String key = site.getId() + "$" + path;
+        DirectorySnapshot snapshot = cache.get(key);
+        if (snapshot != null) {
+            return snapshot;
+        }
+
+        IndexTree.Node node = tree.find(path);
+        if (node == null) {
+            return null;
+        }
+
+        List<FsInfo> files = new ArrayList<>(node.getChildren().size());
+        for (IndexTree.Node child : node.getChildren()) {
+            FsInfo fsInfo = new FsInfo();
+            fsInfo.setName(child.getName());
+            fsInfo.setType(child.isFolder() ? 1 : 0);
+            fsInfo.setThumb("");
+            files.add(fsInfo);
+        }
+        snapshot = directorySnapshotService.build(site, path, files);
+        // 索引更新时整体失效，不需要过期时间
+        cache.put(key, snapshot, 0);
+        return snapshot;
+    }
+
+    @EventListener
+    public void onSiteChanged(SiteChangedEvent event) {
+        evict(event.getSiteId());
+    }
+
+    public void evict(Integer siteId) {
+        // 锁对象保留，否则正在构建时换了新锁，同一个站点会同时构建两次
+        trees.remove(siteId);
+        String prefix = siteId + "$";
+        cache.removeIf(key -> key.startsWith(prefix));
+    }
+
+    /**
+     * @return 索引文件还没有下载时返回 null
+     */
+    private IndexTree getTree(Site site) throws IOException {
+        // 不触发下载，避免降级时还要等待网络
+        File file = indexService.getLocalIndexFile(site);
+        if (!file.exists()) {
+            return null;
+        }
+        long modified = file.lastModified();
+        Holder holder = trees.get(site.getId());
+        if (holder != null && holder.matches(file, modified)) {
+            return holder.tree;
+        }
+
+        // 按站点加锁，构建大的索引时不阻塞其它站点
+        synchronized (locks.computeIfAbsent(site.getId(), id -> new Object())) {
+            holder = trees.get(site.getId());
+            if (holder != null && holder.matches(file, modified)) {
+                return holder.tree;
+            }
+
+            long start = System.currentTimeMillis();
+            IndexTree tree = build(file);
+            trees.put(site.getId(), new Holder(file.getPath(), modified, tree));
+            String prefix = site.getId() + "$";
+            cache.removeIf(key -> key.startsWith(prefix));
+            log.info("build index tree of site {}:{} in {}ms, folders: {} files: {}", site.getId(), site.getName(),
+                    System.currentTimeMillis() - start, tree.getFolders(), tree.getFiles());
+            return tree;
+        }
+    }
+
+    private IndexTree build(File file) throws IOException {
+        IndexTree tree = new IndexTree();
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.endsWith("/" + PLAYLIST_TXT)) {
+                    continue;
+                }
+                tree.add(line, isMediaFile(line));
+            }
+        }
+        return tree;
+    }
+
+    private boolean isMediaFile(String path) {
+        int index = path.lastIndexOf('/');
+        return directorySnapshotService.isMediaFormat(index > -1 ? path.substring(index + 1) : path);
+    }
+
+    private static class Holder {
+        private final String path;
+        private final long modified;
+        private final IndexTree tree;
+
+        Holder(String path, long modified, IndexTree tree) {
+            this.path = path;
+            this.modified = modified;
+            this.tree = tree;
+        }
+
+        boolean matches(File file, long modified) {
+            return path.equals(file.getPath()) && this.modified == modified;
+        }
+    }
+}
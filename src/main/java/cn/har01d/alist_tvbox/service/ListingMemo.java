@@ -0,0 +1,40 @@
+package cn.har01d.alist_tvbox.service;
+
+import cn.har01d.alist_tvbox.entity.Site;
+import cn.har01d.alist_tvbox.model.FsDetail;
+import cn.har01d.alist_tvbox.model.FsResponse;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 单次请求内的目录查询结果，同一个 (site, path) 在一次请求中只请求上游一次
+ */
+public class ListingMemo {
+    private final Map<String, FsResponse> listings = new HashMap<>();
+    private final Map<String, FsDetail> details = new HashMap<>();
+
+    FsResponse getListing(Site site, String path) {
+        return listings.get(key(site, path));
+    }
+
+    void putListing(Site site, String path, FsResponse response) {
+        listings.put(key(site, path), response);
+    }
+
+    boolean hasDetail(Site site, String path) {
+        return details.containsKey(key(site, path));
+    }
+
+    FsDetail getDetail(Site site, String path) {
+        return details.get(key(site, path));
+    }
+
+    void putDetail(Site site, String path, FsDetail detail) {
+        details.put(key(site, path), detail);
+    }
+
+    private static String key(Site site, String path) {
+        return site.getId() + "$" + path;
+    }
+}
@@ -0,0 +1,206 @@
+package cn.har01d.alist_tvbox.service;
+
+import cn.har01d.alist_tvbox.config.AppProperties;
+import cn.har01d.alist_tvbox.entity.Site;
+import cn.har01d.alist_tvbox.exception.ServiceUnavailableException;
+import cn.har01d.alist_tvbox.model.FsDetail;
+import cn.har01d.alist_tvbox.model.FsResponse;
+import com.alibaba.fastjson2.JSONB;
+import lombok.extern.slf4j.Slf4j;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * 保存在本地文件(H2 MVStore)中的目录列表和文件详情，用于没有 Redis 的部署。
+ * 在有效期内直接返回；过期后重新请求 AList，目录列表在站点或网络故障时返回旧的数据。
+ * 条目数量超过上限时删除最旧的条目并压缩文件。
+ */
+@Slf4j
+@Service
+public class ListingStore {
+    private final AppProperties appProperties;
+    private MVStore store;
+    private MVMap<String, byte[]> listings;
+    private MVMap<String, byte[]> details;
+
+    public ListingStore(AppProperties appProperties) {
+        this.appProperties = appProperties;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!appProperties.isListingStore()) {
+            return;
+        }
+        File file = new File(System.getProperty("user.home"), ".config/atv/listing.mv.db");
+        file.getParentFile().mkdirs();
+        try {
+            store = new MVStore.Builder()
+                    .fileName(file.getAbsolutePath())
+                    .compress()
+                    .autoCompactFillRate(50)
+                    .open();
+            listings = store.openMap("listings");
+            details = store.openMap("details");
+            log.info("open listing store {}: {} listings, {} details", file, listings.size(), details.size());
+        } catch (Exception e) {
+            log.warn("open listing store failed", e);
+            store = null;
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    public boolean isEnabled() {
+        return store != null;
+    }
+
+    public FsResponse getListing(Site site, String path, int page, int size, Supplier<FsResponse> loader) {
+        String key = site.getId() + "$" + path + "#" + page + "#" + size;
+        return get(listings, key, FsResponse.class, appProperties.getListingStoreExpire(), loader, true);
+    }
+
+    /**
+     * 文件详情包含有时效的直链，过期后不再返回，加载失败时也不使用旧的数据
+     */
+    public FsDetail getDetail(Site site, String path, Supplier<FsDetail> loader) {
+        String key = site.getId() + "$" + path;
+        return get(details, key, FsDetail.class, appProperties.getListingStoreDetailExpire(), loader, false);
+    }
+
+    /**
+     * @param fallback 站点或网络故障时是否返回过期的数据。加载结果为空(例如文件已经删除)时删除保存的数据
+     */
+    private <T> T get(MVMap<String, byte[]> map, String key, Class<T> type, long expire, Supplier<T> loader, boolean fallback) {
+        byte[] bytes = map.get(key);
+        T stale = null;
+        if (bytes != null) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            long time = buffer.getLong();
+            try {
+                stale = JSONB.parseObject(Arrays.copyOfRange(bytes, 8, bytes.length), type);
+            } catch (Exception e) {
+                log.warn("read {} failed: {}", key, e.getMessage());
+                map.remove(key);
+            }
+            if (stale != null && time + expire * 1000 > System.currentTimeMillis()) {
+                return stale;
+            }
+        }
+
+        T value;
+        try {
+            value = loader.get();
+        } catch (ServiceUnavailableException | ResourceAccessException | HttpServerErrorException e) {
+            if (fallback && stale != null) {
+                log.warn("load {} failed, use stored data: {}", key, e.getMessage());
+                return stale;
+            }
+            throw e;
+        }
+        if (value == null) {
+            if (bytes != null) {
+                map.remove(key);
+            }
+            return null;
+        }
+        byte[] data = JSONB.toBytes(value);
+        map.put(key, ByteBuffer.allocate(8 + data.length).putLong(System.currentTimeMillis()).put(data).array());
+        return value;
+    }
+
+    /**
+     * 站点修改或删除后删除它的所有条目，不再返回旧地址的数据
+     */
+    @EventListener
+    public void onSiteChanged(SiteChangedEvent event) {
+        if (store == null) {
+            return;
+        }
+        String prefix = event.getSiteId() + "$";
+        int removed = removePrefix(listings, prefix) + removePrefix(details, prefix);
+        if (removed > 0) {
+            store.commit();
+            log.info("remove {} entries of site {} from listing store", removed, event.getSiteId());
+        }
+    }
+
+    private int removePrefix(MVMap<String, byte[]> map, String prefix) {
+        List<String> keys = new ArrayList<>();
+        Iterator<String> iterator = map.keyIterator(prefix);
+        while (iterator.hasNext()) {
+            String key = iterator.next();
+            if (!key.startsWith(prefix)) {
+                break;
+            }
+            keys.add(key);
+        }
+        keys.forEach(map::remove);
+        return keys.size();
+    }
+
+    /**
+     * 超过条目数量上限时删除最旧的条目
+     */
+    @Scheduled(initialDelay = 600000, fixedDelay = 600000)
+    public void cleanup() {
+        if (store == null) {
+            return;
+        }
+        int removed = trim(listings, appProperties.getListingStoreMaxSize()) + trim(details, appProperties.getListingStoreMaxSize());
+        if (removed > 0) {
+            store.commit();
+            store.compact(50, 16 * 1024 * 1024);
+            log.info("remove {} entries from listing store", removed);
+        }
+    }
+
+    private int trim(MVMap<String, byte[]> map, int maxSize) {
+        int count = map.size() - maxSize;
+        if (count <= 0) {
+            return 0;
+        }
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(map.size());
+        for (Map.Entry<String, byte[]> entry : map.entrySet()) {
+            entries.add(new AbstractMap.SimpleEntry<>(entry.getKey(), ByteBuffer.wrap(entry.getValue()).getLong()));
+        }
+        entries.sort(Map.Entry.comparingByValue());
+        for (int i = 0; i < count; i++) {
+            map.remove(entries.get(i).getKey());
+        }
+        return count;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", store != null);
+        if (store != null) {
+            stats.put("listings", listings.size());
+            stats.put("details", details.size());
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,144 @@
+package cn.har01d.alist_tvbox.service;
+
+import cn.har01d.alist_tvbox.config.AppProperties;
+import cn.har01d.alist_tvbox.tvbox.MovieDetail;
+import cn.har01d.alist_tvbox.tvbox.MovieList;
+import cn.har01d.alist_tvbox.util.LocalCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * CacheAspect 的一级缓存，放在 Redis 前面。
+ * 本节点写入新值后通过 Redis 发布失效消息，其它节点收到后删除自己的本地副本。
+ */
+@Slf4j
+@Service
+public class LocalCacheService implements MessageListener {
+    public static final String CHANNEL = "cache:invalidate";
+    private static final String SEPARATOR = "|";
+    private static final String KEY_SEPARATOR = "\n";
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final LocalCache<String, Object> cache;
+    private final IRedisService redisService;
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final RedisMessageListenerContainer container;
+
+    public LocalCacheService(AppProperties appProperties, IRedisService redisService,
+                             RedisTemplate<String, Object> redisTemplate, RedisMessageListenerContainer container) {
+        this.cache = new LocalCache<>(appProperties.getLocalCacheSize(), appProperties.getLocalCacheWeight(), LocalCacheService::weigh);
+        this.redisService = redisService;
+        this.redisTemplate = redisTemplate;
+        this.container = container;
+    }
+
+    @PostConstruct
+    public void init() {
+        container.addMessageListener(this, new ChannelTopic(CHANNEL));
+    }
+
+    public Object get(String key) {
+        return cache.get(key);
+    }
+
+    /**
+     * @param time 时间(秒)
+     */
+    public void put(String key, Object value, long time) {
+        if (time > 0 && value != null) {
+            cache.put(key, value, time * 1000);
+        }
+    }
+
+    /**
+     * 值已经在 Redis 中更新，其它节点的本地副本需要失效
+     */
+    public void publish(String key) {
+        try {
+            redisService.publish(CHANNEL, nodeId + SEPARATOR + key);
+        } catch (Exception e) {
+            log.warn("publish cache invalidation failed: {}", e.getMessage());
+        }
+    }
+
+    public void invalidate(String key) {
+        cache.remove(key);
+        publish(key);
+    }
+
+    /**
+     * 批量失效，多个 key 用换行分隔放在一条消息中
+     */
+    public void invalidate(Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        for (String key : keys) {
+            cache.remove(key);
+        }
+        publish(String.join(KEY_SEPARATOR, keys));
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Object body = redisTemplate.getValueSerializer().deserialize(message.getBody());
+        if (!(body instanceof String)) {
+            return;
+        }
+        String text = (String) body;
+        int index = text.indexOf(SEPARATOR);
+        if (index < 0 || text.substring(0, index).equals(nodeId)) {
+            return;
+        }
+        for (String key : text.substring(index + 1).split(KEY_SEPARATOR)) {
+            log.debug("invalidate local cache {}", key);
+            cache.remove(key);
+        }
+    }
+
+    public List<LocalCache.Entry<String, Object>> entries() {
+        return cache.entries();
+    }
+
+    public void restore(String key, Object value, long expireAt) {
+        cache.putUntil(key, value, expireAt);
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public long weight() {
+        return cache.weight();
+    }
+
+    /**
+     * 估算占用的字节数，播放列表的大小主要在 vod_play_url
+     */
+    private static long weigh(Object value) {
+        if (value instanceof MovieList) {
+            long weight = 64;
+            for (MovieDetail movieDetail : ((MovieList) value).getList()) {
+                weight += 512;
+                if (movieDetail.getVod_play_url() != null) {
+                    weight += movieDetail.getVod_play_url().length() * 2L;
+                }
+                if (movieDetail.getVod_content() != null) {
+                    weight += movieDetail.getVod_content().length() * 2L;
+                }
+            }
+            return weight;
+        }
+        return 1024;
+    }
+}
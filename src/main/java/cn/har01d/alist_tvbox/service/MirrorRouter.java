@@ -0,0 +1,158 @@
+package cn.har01d.alist_tvbox.service;
+
+import cn.har01d.alist_tvbox.config.AppProperties;
+import cn.har01d.alist_tvbox.entity.Site;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 镜像组: mirrorGroup 相同的站点提供相同的目录，请求发给探测延迟最低的可用站点
+ */
+@Slf4j
+@Service
+public class MirrorRouter {
+    private static final double ALPHA = 0.3;
+    private static final double UNKNOWN = Double.MAX_VALUE / 2;
+    private static final double FAILED = Double.MAX_VALUE;
+
+    private final SiteService siteService;
+    private final SiteHealthService siteHealthService;
+    private final AppProperties appProperties;
+    private final Map<Integer, Double> latencies = new ConcurrentHashMap<>();
+    private final AtomicLong routed = new AtomicLong();
+    private final AtomicLong hedged = new AtomicLong();
+    private final AtomicLong failover = new AtomicLong();
+    private final AtomicLong hedgeRejected = new AtomicLong();
+    private volatile Map<String, List<Site>> groups;
+
+    public MirrorRouter(SiteService siteService, SiteHealthService siteHealthService, AppProperties appProperties) {
+        this.siteService = siteService;
+        this.siteHealthService = siteHealthService;
+        this.appProperties = appProperties;
+    }
+
+    /**
+     * @return 可用的镜像，延迟最低的在前面；没有镜像或者都不可用时只返回 site
+     */
+    public List<Site> select(Site site) {
+        List<Site> members = getMembers(site);
+        if (members.size() < 2) {
+            return Collections.singletonList(site);
+        }
+
+        List<Site> candidates = new ArrayList<>(members.size());
+        for (Site member : members) {
+            if (siteHealthService.isAvailable(member)) {
+                candidates.add(member);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return Collections.singletonList(site);
+        }
+        // 延迟相同(例如还没有探测)时优先使用请求的站点
+        candidates.sort(Comparator.comparingDouble((Site s) -> latencies.getOrDefault(s.getId(), UNKNOWN))
+                .thenComparing(s -> !s.getId().equals(site.getId())));
+        if (!candidates.get(0).getId().equals(site.getId())) {
+            routed.incrementAndGet();
+        }
+        return candidates;
+    }
+
+    /**
+     * 等待多久之后向第二个镜像发送对冲请求
+     */
+    public long getHedgeDelay(Site site) {
+        long latency = siteHealthService.get(site).getLatency(appProperties.getMirrorHedgePercentile());
+        return latency > 0 ? latency : appProperties.getMirrorHedgeDelay();
+    }
+
+    public List<Site> getMirrorSites() {
+        List<Site> sites = new ArrayList<>();
+        for (List<Site> members : getGroups().values()) {
+            if (members.size() > 1) {
+                sites.addAll(members);
+            }
+        }
+        return sites;
+    }
+
+    public void recordProbe(Site site, long millis, boolean success) {
+        if (!success) {
+            latencies.put(site.getId(), FAILED);
+            return;
+        }
+        latencies.merge(site.getId(), (double) millis,
+                (old, value) -> old >= UNKNOWN ? value : old * (1 - ALPHA) + value * ALPHA);
+    }
+
+    public void onHedged() {
+        hedged.incrementAndGet();
+    }
+
+    public void onFailover() {
+        failover.incrementAndGet();
+    }
+
+    /**
+     * 对冲线程池已满，这次请求没有对冲
+     */
+    public void onHedgeRejected() {
+        hedgeRejected.incrementAndGet();
+    }
+
+    @EventListener
+    public void onSiteChanged(SiteChangedEvent event) {
+        groups = null;
+        latencies.remove(event.getSiteId());
+    }
+
+    private List<Site> getMembers(Site site) {
+        if (StringUtils.isBlank(site.getMirrorGroup())) {
+            return Collections.singletonList(site);
+        }
+        List<Site> members = getGroups().get(site.getMirrorGroup());
+        return members == null ? Collections.singletonList(site) : members;
+    }
+
+    private Map<String, List<Site>> getGroups() {
+        Map<String, List<Site>> map = groups;
+        if (map == null) {
+            map = new HashMap<>();
+            for (Site site : siteService.list()) {
+                if (StringUtils.isNotBlank(site.getMirrorGroup())) {
+                    map.computeIfAbsent(site.getMirrorGroup(), k -> new ArrayList<>()).add(site);
+                }
+            }
+            groups = map;
+        }
+        return map;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        Map<String, Object> sites = new LinkedHashMap<>();
+        for (Site site : getMirrorSites()) {
+            Double latency = latencies.get(site.getId());
+            sites.put(site.getMirrorGroup() + ":" + site.getId(),
+                    latency == null ? "unknown" : latency >= FAILED ? "failed" : Math.round(latency));
+        }
+        stats.put("latency", sites);
+        stats.put("routed", routed.get());
+        stats.put("hedged", hedged.get());
+        stats.put("failover", failover.get());
+        stats.put("hedgeRejected", hedgeRejected.get());
+        return stats;
+    }
+}
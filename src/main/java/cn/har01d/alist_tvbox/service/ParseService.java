@@ -11,14 +11,15 @@ import org.springframework.web.client.RestTemplate;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import java.net.HttpURLConnection;
-import java.util.Objects;
 
 @Slf4j
 @Service
 public class ParseService {
     private final RestTemplate restTemplate;
+    private final PlayUrlRewriter playUrlRewriter;
 
-    public ParseService(RestTemplateBuilder builder) {
+    public ParseService(RestTemplateBuilder builder, PlayUrlRewriter playUrlRewriter) {
+        this.playUrlRewriter = playUrlRewriter;
         restTemplate = builder
                 .defaultHeader(HttpHeaders.ACCEPT, "*/*")
                 .defaultHeader(HttpHeaders.USER_AGENT, Constants.USER_AGENT)
@@ -41,9 +42,7 @@ public class ParseService {
                 result = location;
             }
         }
-        if(url.contains("192.168.2.101") && Objects.equals(builder.build().getHost(), "hhzhome.accesscam.org")){
-            result = result.replace("192.168.2.101:5244","hhzhome.accesscam.org:35244");
-        }
+        result = playUrlRewriter.rewrite(result, builder);
 
         log.info("result: {}", result);
         return result;
@@ -0,0 +1,127 @@
+package cn.har01d.alist_tvbox.service;
+
+import cn.har01d.alist_tvbox.config.AppProperties;
+import cn.har01d.alist_tvbox.model.UrlRewrite;
+import cn.har01d.alist_tvbox.tvbox.MovieDetail;
+import cn.har01d.alist_tvbox.tvbox.MovieList;
+import org.springframework.beans.BeanUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.web.util.UriComponents;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 缓存中的播放地址不包含主机，用 {@link #BASE_URL} 占位，返回响应时再替换成当前请求的地址，
+ * 同一个缓存可以给局域网、外网域名等不同的访问地址使用。
+ * 按主机名的替换规则来自配置 app.urlRewrites，每个主机只编译一次。
+ */
+@Service
+public class PlayUrlRewriter {
+    public static final String BASE_URL = "{{base}}";
+
+    private final Set<Integer> httpsPorts;
+    private final List<UrlRewrite> urlRewrites;
+    private final Map<String, String[]> rules = new ConcurrentHashMap<>();
+
+    public PlayUrlRewriter(AppProperties appProperties) {
+        this.httpsPorts = appProperties.getHttpsPorts();
+        this.urlRewrites = appProperties.getUrlRewrites();
+    }
+
+    /**
+     * 缓存中保存的播放地址
+     */
+    public String buildPlayUrl(Integer siteId, String encodedPath) {
+        return BASE_URL + "/alist/play?site=" + siteId + "&path=" + encodedPath;
+    }
+
+    /**
+     * 返回替换后的副本，不修改缓存中的对象
+     */
+    public MovieList rewrite(MovieList movieList, UriComponentsBuilder builder) {
+        if (movieList == null) {
+            return null;
+        }
+        Context context = new Context(builder);
+        MovieList result = new MovieList();
+        result.setPage(movieList.getPage());
+        result.setPagecount(movieList.getPagecount());
+        result.setLimit(movieList.getLimit());
+        result.setTotal(movieList.getTotal());
+        List<MovieDetail> list = new ArrayList<>(movieList.getList().size());
+        for (MovieDetail movieDetail : movieList.getList()) {
+            MovieDetail copy = new MovieDetail();
+            BeanUtils.copyProperties(movieDetail, copy);
+            copy.setVod_play_url(context.rewrite(movieDetail.getVod_play_url()));
+            list.add(copy);
+        }
+        result.setList(list);
+        return result;
+    }
+
+    public String rewrite(String url, UriComponentsBuilder builder) {
+        if (url == null) {
+            return null;
+        }
+        return new Context(builder).rewrite(url);
+    }
+
+    private String[] getRules(String host) {
+        return rules.computeIfAbsent(host == null ? "" : host, this::compile);
+    }
+
+    private String[] compile(String host) {
+        List<String> list = new ArrayList<>();
+        for (UrlRewrite rule : urlRewrites) {
+            if (rule.getFrom() == null || rule.getFrom().isEmpty()) {
+                continue;
+            }
+            if (rule.getHost() == null || rule.getHost().isEmpty() || rule.getHost().equalsIgnoreCase(host)) {
+                list.add(rule.getFrom());
+                list.add(rule.getTo() == null ? "" : rule.getTo());
+            }
+        }
+        return list.toArray(new String[0]);
+    }
+
+    private class Context {
+        private final UriComponentsBuilder builder;
+        private final String[] rules;
+        private String baseUrl;
+
+        private Context(UriComponentsBuilder builder) {
+            this.builder = builder;
+            this.rules = getRules(builder.build().getHost());
+        }
+
+        private String rewrite(String url) {
+            if (url == null) {
+                return null;
+            }
+            if (url.contains(BASE_URL)) {
+                url = url.replace(BASE_URL, getBaseUrl());
+            }
+            for (int i = 0; i < rules.length; i += 2) {
+                url = url.replace(rules[i], rules[i + 1]);
+            }
+            return url;
+        }
+
+        private String getBaseUrl() {
+            if (baseUrl == null) {
+                UriComponentsBuilder copy = builder.cloneBuilder();
+                UriComponents components = copy.build();
+                if (httpsPorts.contains(components.getPort())) {
+                    copy.scheme("https");
+                }
+                baseUrl = copy.replacePath(null).replaceQuery(null).build().toUriString();
+            }
+            return baseUrl;
+        }
+    }
+}
@@ -3,46 +3,85 @@ package cn.har01d.alist_tvbox.service;
 import cn.har01d.alist_tvbox.config.AppProperties;
 import cn.har01d.alist_tvbox.entity.Site;
 import cn.har01d.alist_tvbox.model.FsInfo;
+import cn.har01d.alist_tvbox.model.FsResponse;
+import cn.har01d.alist_tvbox.util.RequestPriority;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import javax.annotation.PreDestroy;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+@Slf4j
 @Service
 public class PlaylistService {
+    private static final String HEADER = "#name \n" +
+            "#type \n" +
+            "#actor \n" +
+            "#director \n" +
+            "#content \n" +
+            "#lang \n" +
+            "#area \n" +
+            "#year \n\n";
+
     private final AListService aListService;
     private final SiteService siteService;
     private final AppProperties appProperties;
+    private final ExecutorService executorService;
 
     public PlaylistService(AListService aListService, SiteService siteService, AppProperties appProperties) {
         this.aListService = aListService;
         this.siteService = siteService;
         this.appProperties = appProperties;
+        this.executorService = Executors.newFixedThreadPool(Math.max(1, appProperties.getPlaylistConcurrency()));
     }
 
-    public String generate(Integer siteId, String path, boolean includeSub) {
-        String header = "#name \n" +
-                "#type \n" +
-                "#actor \n" +
-                "#director \n" +
-                "#content \n" +
-                "#lang \n" +
-                "#area \n" +
-                "#year \n\n";
-        Site site = siteService.getById(siteId);
-        return header + generate(site, path, "播放列表", "", includeSub);
+    @PreDestroy
+    public void shutdown() {
+        executorService.shutdownNow();
     }
 
-    private String generate(Site site, String path, String name, String parent, boolean includeSub) {
-        StringBuilder sb = new StringBuilder();
+    /**
+     * 边列目录边输出，每个目录处理完就写出对应的分组。
+     * 根目录在开始输出之前获取，失败时直接返回错误响应；子目录失败时响应已经开始，
+     * 写出 #error 行后抛出异常中断连接，客户端不会把不完整的列表当成完整的。
+     */
+    public StreamingResponseBody stream(Integer siteId, String path, boolean includeSub, Integer maxDepth) {
+        Site site = siteService.getById(siteId);
+        int depth = maxDepth == null ? appProperties.getPlaylistMaxDepth() : maxDepth;
+        log.info("generate playlist {}:{} {} max depth: {}", site.getId(), site.getName(), path, depth);
+        FsResponse response = aListService.listFiles(site, path, 1, 0);
+        return out -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            writer.write(HEADER);
+            generate(site, path, response, "播放列表", "", includeSub, 0, depth, writer);
+            writer.flush();
+        };
+    }
 
+    private void generate(Site site, String path, FsResponse response, String name, String parent, boolean includeSub,
+                          int depth, int maxDepth, Writer writer) throws IOException {
         List<String> files = new ArrayList<>();
         List<String> folders = new ArrayList<>();
         List<String> lines = new ArrayList<>();
-        for (FsInfo fsInfo : aListService.listFiles(site, path, 1, 0).getFiles()) {
+        boolean descend = includeSub && (maxDepth <= 0 || depth < maxDepth);
+        for (FsInfo fsInfo : response.getFiles()) {
             if (fsInfo.getType() != 1) {
                 files.add(fsInfo.getName());
-            } else if (includeSub) {
+            } else if (descend) {
                 folders.add(fsInfo.getName());
             }
         }
@@ -55,16 +94,63 @@ public class PlaylistService {
         }
 
         if (lines.size() > 1) {
-            sb.append(name).append(",#genre#\n");
-            lines.forEach(sb::append);
-            sb.append("\n");
+            writer.write(name + ",#genre#\n");
+            for (String line : lines) {
+                writer.write(line);
+            }
+            writer.write("\n");
+            writer.flush();
+        }
+
+        // 子目录并发获取，但按原来的顺序输出，最多预取 playlistConcurrency 个
+        int window = Math.max(1, appProperties.getPlaylistConcurrency());
+        Deque<Future<FsResponse>> pending = new ArrayDeque<>();
+        int next = 0;
+        while (next < folders.size() && pending.size() < window) {
+            pending.add(submit(site, path + "/" + folders.get(next++)));
         }
 
-        for (String file : folders) {
-            sb.append(generate(site, path + "/" + file, file, parent + (parent.isEmpty() ? "" : "/") + file, true));
+        try {
+            for (String folder : folders) {
+                FsResponse child;
+                try {
+                    child = await(pending.poll(), path + "/" + folder);
+                } catch (IOException e) {
+                    writer.write("#error " + e.getMessage() + "\n");
+                    writer.flush();
+                    throw e;
+                }
+                if (next < folders.size()) {
+                    pending.add(submit(site, path + "/" + folders.get(next++)));
+                }
+                generate(site, path + "/" + folder, child, folder, parent + (parent.isEmpty() ? "" : "/") + folder,
+                        true, depth + 1, maxDepth, writer);
+            }
+        } finally {
+            pending.forEach(future -> future.cancel(true));
         }
+    }
 
-        return sb.toString();
+    /**
+     * 播放列表是用户在等待的请求，子目录使用提交时(请求线程)的优先级
+     */
+    private Future<FsResponse> submit(Site site, String path) {
+        return executorService.submit(RequestPriority.inherit(() -> aListService.listFiles(site, path, 1, 0)));
+    }
+
+    /**
+     * 子目录获取失败时中断输出，不返回缺少目录的播放列表
+     */
+    private FsResponse await(Future<FsResponse> future, String path) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("playlist generation interrupted");
+        } catch (ExecutionException e) {
+            log.warn("list files {} failed", path, e.getCause());
+            throw new IOException("list files " + path + " failed", e.getCause());
+        }
     }
 
     private String getName(String name) {
@@ -0,0 +1,103 @@
+package cn.har01d.alist_tvbox.service;
+
+import cn.har01d.alist_tvbox.config.AppProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 访问热度。请求时只在内存中计数，定时批量写入 Redis 的 zset，
+ * 定时按比例衰减分数，最近常访问的条目排在前面。
+ */
+@Slf4j
+@Service
+public class PopularityService {
+    public static final String DETAIL = "popular:detail";
+    public static final String LISTING = "popular:listing";
+    private static final int MAX_BUFFER_SIZE = 10000;
+
+    private final IRedisService redisService;
+    private final AppProperties appProperties;
+    private final Map<String, AtomicReference<Map<String, LongAdder>>> buffers = new HashMap<>();
+
+    public PopularityService(IRedisService redisService, AppProperties appProperties) {
+        this.redisService = redisService;
+        this.appProperties = appProperties;
+        buffers.put(DETAIL, new AtomicReference<>(new ConcurrentHashMap<>()));
+        buffers.put(LISTING, new AtomicReference<>(new ConcurrentHashMap<>()));
+    }
+
+    /**
+     * @param type {@link #DETAIL} 或 {@link #LISTING}
+     * @param tid  siteId$path
+     */
+    public void record(String type, String tid) {
+        Map<String, LongAdder> buffer = buffers.get(type).get();
+        if (buffer.size() >= MAX_BUFFER_SIZE && !buffer.containsKey(tid)) {
+            return;
+        }
+        buffer.computeIfAbsent(tid, k -> new LongAdder()).increment();
+    }
+
+    @Scheduled(initialDelayString = "${app.popularityFlushDelay:10000}", fixedDelayString = "${app.popularityFlushDelay:10000}")
+    public void flush() {
+        if (!redisService.isAvailable()) {
+            return;
+        }
+        for (Map.Entry<String, AtomicReference<Map<String, LongAdder>>> entry : buffers.entrySet()) {
+            Map<String, LongAdder> buffer = entry.getValue().getAndSet(new ConcurrentHashMap<>());
+            if (buffer.isEmpty()) {
+                continue;
+            }
+            Map<Object, Double> scores = new HashMap<>();
+            buffer.forEach((tid, count) -> scores.put(tid, (double) count.sum()));
+            redisService.batchIncrementScore(entry.getKey(), scores);
+        }
+    }
+
+    @Scheduled(initialDelayString = "${app.popularityDecayDelay:3600000}", fixedDelayString = "${app.popularityDecayDelay:3600000}")
+    public void decay() {
+        if (!redisService.isAvailable()) {
+            return;
+        }
+        for (String key : buffers.keySet()) {
+            try {
+                redisService.scaleZset(key, appProperties.getPopularityDecay());
+                redisService.removeRange(key, 0, -appProperties.getPopularityMaxSize() - 1L);
+            } catch (Exception e) {
+                log.warn("decay {} failed: {}", key, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return 每种类型分数最高的 size 个 tid
+     */
+    public Map<String, List<String>> getTop(int size) {
+        List<String> keys = Arrays.asList(DETAIL, LISTING);
+        List<Set<ZSetOperations.TypedTuple<Object>>> results = redisService.batchReverseRangeWithScores(keys, 0, size - 1);
+        Map<String, List<String>> top = new LinkedHashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            List<String> list = new ArrayList<>();
+            if (i < results.size() && results.get(i) != null) {
+                for (ZSetOperations.TypedTuple<Object> tuple : results.get(i)) {
+                    list.add(String.valueOf(tuple.getValue()));
+                }
+            }
+            top.put(keys.get(i), list);
+        }
+        return top;
+    }
+}
@@ -0,0 +1,150 @@
+package cn.har01d.alist_tvbox.service;
+
+import cn.har01d.alist_tvbox.config.AppProperties;
+import cn.har01d.alist_tvbox.config.CompactRedisSerializer;
+import cn.har01d.alist_tvbox.util.LocalCache;
+import io.lettuce.core.AbstractRedisClient;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.TrackingArgs;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.support.caching.CacheAccessor;
+import io.lettuce.core.support.caching.CacheFrontend;
+import io.lettuce.core.support.caching.ClientSideCaching;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Redis 客户端缓存(RESP3 tracking, 需要 Redis 6)。开启后读取 cache: 开头的 key 时先查本地，
+ * key 在 Redis 中被修改或删除时由 Redis 推送失效消息。默认关闭，通过 app.redisClientCache 开启。
+ */
+@Slf4j
+@Component
+public class RedisClientCache {
+    public static final String PREFIX = "cache:";
+
+    private final RedisConnectionFactory connectionFactory;
+    private final CompactRedisSerializer serializer;
+    private final AppProperties appProperties;
+    private LocalCache<String, Object> cache;
+    private StatefulRedisConnection<String, Object> connection;
+    private CacheFrontend<String, Object> frontend;
+
+    public RedisClientCache(RedisConnectionFactory connectionFactory, CompactRedisSerializer serializer, AppProperties appProperties) {
+        this.connectionFactory = connectionFactory;
+        this.serializer = serializer;
+        this.appProperties = appProperties;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!appProperties.isRedisClientCache()) {
+            return;
+        }
+        if (!(connectionFactory instanceof LettuceConnectionFactory)) {
+            log.warn("redis client cache requires lettuce");
+            return;
+        }
+        AbstractRedisClient client = ((LettuceConnectionFactory) connectionFactory).getNativeClient();
+        if (!(client instanceof RedisClient)) {
+            log.warn("redis client cache only supports standalone redis");
+            return;
+        }
+
+        try {
+            cache = new LocalCache<>(appProperties.getRedisClientCacheSize());
+            connection = ((RedisClient) client).connect(new ValueCodec());
+            frontend = ClientSideCaching.enable(new Accessor(), connection,
+                    TrackingArgs.Builder.enabled().bcast().prefixes(PREFIX));
+            log.info("redis client cache enabled");
+        } catch (Exception e) {
+            log.warn("enable redis client cache failed: {}", e.getMessage());
+            close();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        if (frontend != null) {
+            frontend.close();
+            frontend = null;
+        }
+        if (connection != null) {
+            connection.close();
+            connection = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return frontend != null;
+    }
+
+    public boolean supports(String key) {
+        return frontend != null && key.startsWith(PREFIX);
+    }
+
+    /**
+     * 本地没有时从 Redis 读取并开始跟踪
+     */
+    public Object get(String key) {
+        return frontend.get(key);
+    }
+
+    public int size() {
+        return cache == null ? 0 : cache.size();
+    }
+
+    /**
+     * 条目有过期时间，连接断开期间丢失失效消息时也不会一直使用旧值
+     */
+    private class Accessor implements CacheAccessor<String, Object> {
+        @Override
+        public Object get(String key) {
+            return cache.get(key);
+        }
+
+        @Override
+        public void put(String key, Object value) {
+            cache.put(key, value, appProperties.getRedisClientCacheTtl() * 1000L);
+        }
+
+        @Override
+        public void evict(String key) {
+            cache.remove(key);
+        }
+    }
+
+    /**
+     * 和 RedisTemplate 使用相同的序列化，本地保存的是反序列化后的对象
+     */
+    private class ValueCodec implements RedisCodec<String, Object> {
+        @Override
+        public String decodeKey(ByteBuffer bytes) {
+            return StandardCharsets.UTF_8.decode(bytes).toString();
+        }
+
+        @Override
+        public Object decodeValue(ByteBuffer bytes) {
+            byte[] data = new byte[bytes.remaining()];
+            bytes.get(data);
+            return serializer.deserialize(data);
+        }
+
+        @Override
+        public ByteBuffer encodeKey(String key) {
+            return StandardCharsets.UTF_8.encode(key);
+        }
+
+        @Override
+        public ByteBuffer encodeValue(Object value) {
+            return ByteBuffer.wrap(serializer.serialize(value));
+        }
+    }
+}
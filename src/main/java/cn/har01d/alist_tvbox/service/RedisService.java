@@ -1,23 +1,42 @@
 package cn.har01d.alist_tvbox.service;
 
+import cn.har01d.alist_tvbox.config.AppProperties;
+import cn.har01d.alist_tvbox.util.CircuitBreaker;
+import cn.har01d.alist_tvbox.util.LocalCache;
+import io.lettuce.core.RedisException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.RedisConnection;
 import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.RedisZSetCommands;
 import org.springframework.data.redis.connection.ReturnType;
 import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.ValueOperations;
 import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.data.redis.core.types.Expiration;
 import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 /**
  * 基于spring和redis的redisTemplate工具类 针对所有的hash 都是以h开头的方法 针对所有的Set 都是以s开头的方法 针对所有的List 都是以l开头的方法
@@ -29,10 +48,28 @@ public class RedisService implements IRedisService {
     @Autowired
     private RedisTemplate<String, Object> redisTemplate;
 
+    @Autowired
+    private AppProperties appProperties;
+
+    @Autowired
+    private RedisClientCache redisClientCache;
+
     private ThreadLocal<String> lockFlag = new ThreadLocal<String>();
 
+    /**
+     * Redis 连续失败后打开，打开期间 get/set/hasKey/del 使用本地缓存，其它命令直接返回失败，不再等待超时
+     */
+    private CircuitBreaker circuitBreaker;
+    private LocalCache<String, Object> fallback;
+    private ScheduledExecutorService prober;
+
     public static final String UNLOCK_LUA;
 
+    /**
+     * pipeline 中每个 DEL 命令的 key 数量
+     */
+    private static final int BATCH_SIZE = 500;
+
     static {
         StringBuilder sb = new StringBuilder();
         sb.append("if redis.call(\"get\",KEYS[1]) == ARGV[1] ");
@@ -46,7 +83,97 @@ public class RedisService implements IRedisService {
 
     @PostConstruct
     public void init() {
-        redisTemplate.opsForValue().get("test");
+        circuitBreaker = new CircuitBreaker("redis", appProperties.getRedisFailureThreshold(), appProperties.getRedisOpenTime() * 1000L);
+        fallback = new LocalCache<>(appProperties.getRedisFallbackCacheSize());
+        prober = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "redis-probe");
+            thread.setDaemon(true);
+            return thread;
+        });
+        prober.scheduleWithFixedDelay(this::probe, 1, 1, TimeUnit.SECONDS);
+        try {
+            redisTemplate.opsForValue().get("test");
+        } catch (DataAccessException e) {
+            log.warn("redis is unavailable, use local cache: {}", e.getMessage());
+            circuitBreaker.trip();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        prober.shutdownNow();
+    }
+
+    /**
+     * 半开时在后台探测，请求线程不会等待 Redis 超时
+     */
+    private void probe() {
+        if (!circuitBreaker.tryHalfOpen()) {
+            return;
+        }
+        try {
+            redisTemplate.execute((RedisCallback<String>) RedisConnection::ping);
+            fallback.clear();
+            circuitBreaker.onSuccess();
+        } catch (Exception e) {
+            log.debug("redis probe failed: {}", e.getMessage());
+            circuitBreaker.onFailure();
+        }
+    }
+
+    /**
+     * 客户端缓存直接使用 Lettuce，抛出的是 RedisException 而不是 DataAccessException
+     */
+    private void onError(Exception e) {
+        if (e instanceof DataAccessException || e instanceof RedisException) {
+            circuitBreaker.onFailure();
+        }
+    }
+
+    /**
+     * 没有本地降级的命令: 熔断时直接抛出异常，不再等待超时
+     */
+    private <T> T call(Supplier<T> action) {
+        if (!circuitBreaker.allowRequest()) {
+            throw new RedisConnectionFailureException("redis is unavailable");
+        }
+        return record(action);
+    }
+
+    /**
+     * 执行命令并把结果记录到熔断器，异常原样抛出
+     */
+    private <T> T record(Supplier<T> action) {
+        try {
+            T result = action.get();
+            circuitBreaker.onSuccess();
+            return result;
+        } catch (RuntimeException e) {
+            onError(e);
+            throw e;
+        }
+    }
+
+    private void record(Runnable action) {
+        record(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return circuitBreaker.isClosed();
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>(circuitBreaker.getStats());
+        stats.put("fallbackSize", fallback.size());
+        if (redisClientCache.isEnabled()) {
+            stats.put("clientCacheSize", redisClientCache.size());
+        }
+        return stats;
     }
 
 
@@ -82,13 +209,16 @@ public class RedisService implements IRedisService {
     }
 
     private boolean tryLockRedis(String lockKey, String requestId, long expire, TimeUnit timeUnit) {
+        if (!circuitBreaker.allowRequest()) {
+            return false;
+        }
         try {
             RedisCallback<Boolean> callback = (connection) -> {
                 byte[] lockKeybytes = lockKey.getBytes(Charset.forName("UTF-8"));
                 byte[] requestIdbytes = requestId.getBytes(Charset.forName("UTF-8"));
                 return connection.set(lockKeybytes, requestIdbytes, Expiration.seconds(timeUnit.toSeconds(expire)), RedisStringCommands.SetOption.SET_IF_ABSENT);
             };
-            return (Boolean) redisTemplate.execute(callback);
+            return (Boolean) record(() -> redisTemplate.execute(callback));
         } catch (Exception e) {
             log.error("redis lock error:{}", e);
         }
@@ -109,7 +239,7 @@ public class RedisService implements IRedisService {
             byte[] requestIdbytes = requestId.getBytes(Charset.forName("UTF-8"));
             return connection.eval(UNLOCK_LUA.getBytes(), ReturnType.BOOLEAN, 1, lockKeybytes, requestIdbytes);
         };
-        return (Boolean) redisTemplate.execute(callback);
+        return (Boolean) call(() -> redisTemplate.execute(callback));
     }
 
     /**
@@ -120,11 +250,14 @@ public class RedisService implements IRedisService {
      */
     @Override
     public String getLockValue(String lockKey) {
+        if (!circuitBreaker.allowRequest()) {
+            return null;
+        }
         try {
             RedisCallback<String> callback = (connection) -> {
                 return new String(connection.get(lockKey.getBytes()), Charset.forName("UTF-8"));
             };
-            return (String) redisTemplate.execute(callback);
+            return (String) record(() -> redisTemplate.execute(callback));
         } catch (Exception e) {
             log.error("get redis occurred an exception:{}", e);
         }
@@ -141,9 +274,12 @@ public class RedisService implements IRedisService {
      */
     @Override
     public boolean expire(String key, long time) {
+        if (!circuitBreaker.allowRequest()) {
+            return false;
+        }
         try {
             if (time > 0) {
-                redisTemplate.expire(key, time, TimeUnit.SECONDS);
+                record(() -> redisTemplate.expire(key, time, TimeUnit.SECONDS));
             }
             return true;
         } catch (Exception e) {
@@ -154,8 +290,11 @@ public class RedisService implements IRedisService {
 
     @Override
     public boolean setNxex(String key, Object value, long timeout, TimeUnit unit) {
+        if (!circuitBreaker.allowRequest()) {
+            return false;
+        }
         try {
-            Boolean result = redisTemplate.opsForValue().setIfAbsent(key, value, timeout, unit);
+            Boolean result = record(() -> redisTemplate.opsForValue().setIfAbsent(key, value, timeout, unit));
             if (result != null) {
                 return result.booleanValue();
             }
@@ -173,7 +312,7 @@ public class RedisService implements IRedisService {
      */
     @Override
     public long getExpire(String key) {
-        return redisTemplate.getExpire(key, TimeUnit.SECONDS);
+        return call(() -> redisTemplate.getExpire(key, TimeUnit.SECONDS));
     }
 
     /**
@@ -184,9 +323,15 @@ public class RedisService implements IRedisService {
      */
     @Override
     public boolean hasKey(String key) {
+        if (!circuitBreaker.allowRequest()) {
+            return fallback.get(key) != null;
+        }
         try {
-            return redisTemplate.hasKey(key);
+            Boolean result = redisTemplate.hasKey(key);
+            circuitBreaker.onSuccess();
+            return result != null && result;
         } catch (Exception e) {
+            onError(e);
             log.error("hasKey:{}", e);
             return false;
         }
@@ -201,15 +346,47 @@ public class RedisService implements IRedisService {
     @Override
     public void del(String... key) {
         if (key != null && key.length > 0) {
-            if (key.length == 1) {
-                redisTemplate.delete(key[0]);
-            } else {
-                List list = CollectionUtils.arrayToList(key);
-                redisTemplate.delete(list);
+            for (String k : key) {
+                fallback.remove(k);
+            }
+            if (!circuitBreaker.allowRequest()) {
+                return;
+            }
+            try {
+                if (key.length == 1) {
+                    redisTemplate.delete(key[0]);
+                } else {
+                    List list = CollectionUtils.arrayToList(key);
+                    redisTemplate.delete(list);
+                }
+                circuitBreaker.onSuccess();
+            } catch (Exception e) {
+                onError(e);
+                log.warn("del {} failed: {}", key[0], e.getMessage());
             }
         }
     }
 
+    /**
+     * 发布消息
+     *
+     * @param channel 频道
+     * @param message 消息
+     */
+    @Override
+    public void publish(String channel, Object message) {
+        if (!circuitBreaker.allowRequest()) {
+            return;
+        }
+        try {
+            redisTemplate.convertAndSend(channel, message);
+            circuitBreaker.onSuccess();
+        } catch (Exception e) {
+            onError(e);
+            log.warn("publish to {} failed: {}", channel, e.getMessage());
+        }
+    }
+
     // ============================String=============================
 
     /**
@@ -220,7 +397,21 @@ public class RedisService implements IRedisService {
      */
     @Override
     public Object get(String key) {
-        return key == null ? null : redisTemplate.opsForValue().get(key);
+        if (key == null) {
+            return null;
+        }
+        if (!circuitBreaker.allowRequest()) {
+            return fallback.get(key);
+        }
+        try {
+            Object value = redisClientCache.supports(key) ? redisClientCache.get(key) : redisTemplate.opsForValue().get(key);
+            circuitBreaker.onSuccess();
+            return value;
+        } catch (RuntimeException e) {
+            onError(e);
+            log.warn("get {} failed: {}", key, e.getMessage());
+            return fallback.get(key);
+        }
     }
 
     /**
@@ -232,10 +423,16 @@ public class RedisService implements IRedisService {
      */
     @Override
     public boolean set(String key, Object value) {
+        if (!circuitBreaker.allowRequest()) {
+            fallback.put(key, value, 0);
+            return true;
+        }
         try {
             redisTemplate.opsForValue().set(key, value);
+            circuitBreaker.onSuccess();
             return true;
         } catch (Exception e) {
+            onError(e);
             log.error("set:{}", e);
             return false;
         }
@@ -252,14 +449,19 @@ public class RedisService implements IRedisService {
      */
     @Override
     public boolean set(String key, Object value, long time) {
+        if (time <= 0) {
+            return set(key, value);
+        }
+        if (!circuitBreaker.allowRequest()) {
+            fallback.put(key, value, time * 1000);
+            return true;
+        }
         try {
-            if (time > 0) {
-                redisTemplate.opsForValue().set(key, value, time, TimeUnit.SECONDS);
-            } else {
-                set(key, value);
-            }
+            redisTemplate.opsForValue().set(key, value, time, TimeUnit.SECONDS);
+            circuitBreaker.onSuccess();
             return true;
         } catch (Exception e) {
+            onError(e);
             log.error("set:{}", e);
             return false;
         }
@@ -277,7 +479,7 @@ public class RedisService implements IRedisService {
         if (delta < 0) {
             throw new RuntimeException("递增因子必须大于0");
         }
-        return redisTemplate.opsForValue().increment(key, delta);
+        return call(() -> redisTemplate.opsForValue().increment(key, delta));
     }
 
     /**
@@ -292,7 +494,7 @@ public class RedisService implements IRedisService {
         if (delta < 0) {
             throw new RuntimeException("递减因子必须大于0");
         }
-        return redisTemplate.opsForValue().increment(key, -delta);
+        return call(() -> redisTemplate.opsForValue().increment(key, -delta));
     }
 
     // ================================Map=================================
@@ -306,7 +508,7 @@ public class RedisService implements IRedisService {
      */
     @Override
     public Object hget(String key, String item) {
-        return redisTemplate.opsForHash().get(key, item);
+        return call(() -> redisTemplate.opsForHash().get(key, item));
     }
 
     /**
@@ -317,7 +519,7 @@ public class RedisService implements IRedisService {
      */
     @Override
     public Map<Object, Object> hmget(String key) {
-        return redisTemplate.opsForHash().entries(key);
+        return call(() -> redisTemplate.opsForHash().entries(key));
     }
 
     /**
@@ -329,8 +531,11 @@ public class RedisService implements IRedisService {
      */
     @Override
     public boolean hmset(String key, Map<String, Object> map) {
+        if (!circuitBreaker.allowRequest()) {
+            return false;
+        }
         try {
-            redisTemplate.opsForHash().putAll(key, map);
+            record(() -> redisTemplate.opsForHash().putAll(key, map));
             return true;
         } catch (Exception e) {
             log.error("hmset:{}", e);
@@ -348,8 +553,11 @@ public class RedisService implements IRedisService {
      */
     @Override
     public boolean hmset(String key, Map<String, Object> map, long time) {
+        if (!circuitBreaker.allowRequest()) {
+            return false;
+        }
         try {
-            redisTemplate.opsForHash().putAll(key, map);
+            record(() -> redisTemplate.opsForHash().putAll(key, map));
             if (time > 0) {
                 expire(key, time);
             }
@@ -370,8 +578,11 @@ public class RedisService implements IRedisService {
      */
     @Override
     public boolean hset(String key, String item, Object value) {
+        if (!circuitBreaker.allowRequest()) {
+            return false;
+        }
         try {
-            redisTemplate.opsForHash().put(key, item, value);
+            record(() -> redisTemplate.opsForHash().put(key, item, value));
             return true;
         } catch (Exception e) {
             log.error("hset:{}", e);
@@ -390,8 +601,11 @@ public class RedisService implements IRedisService {
      */
     @Override
     public boolean hset(String key, String item, Object value, long time) {
+        if (!circuitBreaker.allowRequest()) {
+            return false;
+        }
         try {
-            redisTemplate.opsForHash().put(key, item, value);
+            record(() -> redisTemplate.opsForHash().put(key, item, value));
             if (time > 0) {
                 expire(key, time);
             }
@@ -410,7 +624,7 @@ public class RedisService implements IRedisService {
      */
     @Override
     public void hdel(String key, Object... item) {
-        redisTemplate.opsForHash().delete(key, item);
+        call(() -> redisTemplate.opsForHash().delete(key, item));
     }
 
     /**
@@ -422,7 +636,7 @@ public class RedisService implements IRedisService {
      */
     @Override
     public boolean hHasKey(String key, String item) {
-        return redisTemplate.opsForHash().hasKey(key, item);
+        return call(() -> redisTemplate.opsForHash().hasKey(key, item));
     }
 
     /**
@@ -435,12 +649,12 @@ public class RedisService implements IRedisService {
      */
     @Override
     public double hincr(String key, String item, double by) {
-        return redisTemplate.opsForHash().increment(key, item, by);
+        return call(() -> redisTemplate.opsForHash().increment(key, item, by));
     }
 
     @Override
     public long hincr(String key, String item, long by) {
-        return redisTemplate.opsForHash().increment(key, item, by);
+        return call(() -> redisTemplate.opsForHash().increment(key, item, by));
     }
 
     /**
@@ -453,12 +667,12 @@ public class RedisService implements IRedisService {
      */
     @Override
     public double hdecr(String key, String item, double by) {
-        return redisTemplate.opsForHash().increment(key, item, -by);
+        return call(() -> redisTemplate.opsForHash().increment(key, item, -by));
     }
 
     @Override
     public long hdecr(String key, String item, long by) {
-        return redisTemplate.opsForHash().increment(key, item, -by);
+        return call(() -> redisTemplate.opsForHash().increment(key, item, -by));
     }
 
     // ============================set=============================
@@ -471,8 +685,11 @@ public class RedisService implements IRedisService {
      */
     @Override
     public Set<Object> sGet(String key) {
+        if (!circuitBreaker.allowRequest()) {
+            return null;
+        }
         try {
-            return redisTemplate.opsForSet().members(key);
+            return record(() -> redisTemplate.opsForSet().members(key));
         } catch (Exception e) {
             log.error("sGet:{}", e);
             return null;
@@ -488,8 +705,11 @@ public class RedisService implements IRedisService {
      */
     @Override
     public boolean sHasKey(String key, Object value) {
+        if (!circuitBreaker.allowRequest()) {
+            return false;
+        }
         try {
-            return redisTemplate.opsForSet().isMember(key, value);
+            return record(() -> redisTemplate.opsForSet().isMember(key, value));
         } catch (Exception e) {
             log.error("sHasKey:{}", e);
             return false;
@@ -505,8 +725,11 @@ public class RedisService implements IRedisService {
      */
     @Override
     public long sSet(String key, Object... values) {
+        if (!circuitBreaker.allowRequest()) {
+            return 0;
+        }
         try {
-            return redisTemplate.opsForSet().add(key, values);
+            return record(() -> redisTemplate.opsForSet().add(key, values));
         } catch (Exception e) {
             log.error("sSet:{}", e);
             return 0;
@@ -523,8 +746,11 @@ public class RedisService implements IRedisService {
      */
     @Override
     public long sSetAndTime(String key, long time, Object... values) {
+        if (!circuitBreaker.allowRequest()) {
+            return 0;
+        }
         try {
-            Long count = redisTemplate.opsForSet().add(key, values);
+            Long count = record(() -> redisTemplate.opsForSet().add(key, values));
             if (time > 0) {
                 expire(key, time);
             }
@@ -544,8 +770,11 @@ public class RedisService implements IRedisService {
      */
     @Override
     public long sGetSetSize(String key) {
+        if (!circuitBreaker.allowRequest()) {
+            return 0;
+        }
         try {
-            return redisTemplate.opsForSet().size(key);
+            return record(() -> redisTemplate.opsForSet().size(key));
         } catch (Exception e) {
             log.error("sGetSetSize:{}", e);
             return 0;
@@ -561,8 +790,11 @@ public class RedisService implements IRedisService {
      */
     @Override
     public long setRemove(String key, Object... values) {
+        if (!circuitBreaker.allowRequest()) {
+            return 0;
+        }
         try {
-            Long count = redisTemplate.opsForSet().remove(key, values);
+            Long count = record(() -> redisTemplate.opsForSet().remove(key, values));
             return count;
         } catch (Exception e) {
             log.error("setRemove:{}", e);
@@ -579,8 +811,11 @@ public class RedisService implements IRedisService {
      */
     @Override
     public boolean sIsMember(String key, Object value) {
+        if (!circuitBreaker.allowRequest()) {
+            return false;
+        }
         try {
-            return redisTemplate.opsForSet().isMember(key, value);
+            return record(() -> redisTemplate.opsForSet().isMember(key, value));
         } catch (Exception e) {
             log.error("sIsMember:{}", e);
             return false;
@@ -599,8 +834,11 @@ public class RedisService implements IRedisService {
      */
     @Override
     public List<Object> lGet(String key, long start, long end) {
+        if (!circuitBreaker.allowRequest()) {
+            return null;
+        }
         try {
-            return redisTemplate.opsForList().range(key, start, end);
+            return record(() -> redisTemplate.opsForList().range(key, start, end));
         } catch (Exception e) {
             log.error("lGet:{}", e);
             return null;
@@ -615,8 +853,11 @@ public class RedisService implements IRedisService {
      */
     @Override
     public long lGetListSize(String key) {
+        if (!circuitBreaker.allowRequest()) {
+            return 0;
+        }
         try {
-            return redisTemplate.opsForList().size(key);
+            return record(() -> redisTemplate.opsForList().size(key));
         } catch (Exception e) {
             log.error("lGetListSize:{}", e);
             return 0;
@@ -632,8 +873,11 @@ public class RedisService implements IRedisService {
      */
     @Override
     public Object lGetIndex(String key, long index) {
+        if (!circuitBreaker.allowRequest()) {
+            return null;
+        }
         try {
-            return redisTemplate.opsForList().index(key, index);
+            return record(() -> redisTemplate.opsForList().index(key, index));
         } catch (Exception e) {
             log.error("lGetIndex:{}", e);
             return null;
@@ -649,8 +893,11 @@ public class RedisService implements IRedisService {
      */
     @Override
     public boolean lSet(String key, Object value) {
+        if (!circuitBreaker.allowRequest()) {
+            return false;
+        }
         try {
-            redisTemplate.opsForList().rightPush(key, value);
+            record(() -> redisTemplate.opsForList().rightPush(key, value));
             return true;
         } catch (Exception e) {
             log.error("lSet:{}", e);
@@ -668,8 +915,11 @@ public class RedisService implements IRedisService {
      */
     @Override
     public boolean lSet(String key, Object value, long time) {
+        if (!circuitBreaker.allowRequest()) {
+            return false;
+        }
         try {
-            redisTemplate.opsForList().rightPush(key, value);
+            record(() -> redisTemplate.opsForList().rightPush(key, value));
             if (time > 0) {
                 expire(key, time);
             }
@@ -689,8 +939,11 @@ public class RedisService implements IRedisService {
      */
     @Override
     public boolean lSet(String key, List<Object> value) {
+        if (!circuitBreaker.allowRequest()) {
+            return false;
+        }
         try {
-            redisTemplate.opsForList().rightPushAll(key, value);
+            record(() -> redisTemplate.opsForList().rightPushAll(key, value));
             return true;
         } catch (Exception e) {
             log.error("lSet:{}", e);
@@ -708,8 +961,11 @@ public class RedisService implements IRedisService {
      */
     @Override
     public boolean lSet(String key, List<Object> value, long time) {
+        if (!circuitBreaker.allowRequest()) {
+            return false;
+        }
         try {
-            redisTemplate.opsForList().rightPushAll(key, value);
+            record(() -> redisTemplate.opsForList().rightPushAll(key, value));
             if (time > 0) {
                 expire(key, time);
             }
@@ -723,7 +979,7 @@ public class RedisService implements IRedisService {
 
     @Override
     public boolean leftPushIfPresent(String key, Object value) {
-        Long aLong = redisTemplate.opsForList().leftPushIfPresent(key, value);
+        Long aLong = call(() -> redisTemplate.opsForList().leftPushIfPresent(key, value));
         return true;
 
     }
@@ -738,8 +994,11 @@ public class RedisService implements IRedisService {
      */
     @Override
     public boolean lUpdateIndex(String key, long index, Object value) {
+        if (!circuitBreaker.allowRequest()) {
+            return false;
+        }
         try {
-            redisTemplate.opsForList().set(key, index, value);
+            record(() -> redisTemplate.opsForList().set(key, index, value));
             return true;
         } catch (Exception e) {
             log.error("lUpdateIndex:{}", e);
@@ -757,8 +1016,11 @@ public class RedisService implements IRedisService {
      */
     @Override
     public long lRemove(String key, long count, Object value) {
+        if (!circuitBreaker.allowRequest()) {
+            return 0;
+        }
         try {
-            Long remove = redisTemplate.opsForList().remove(key, count, value);
+            Long remove = record(() -> redisTemplate.opsForList().remove(key, count, value));
             return remove;
         } catch (Exception e) {
             log.error("lRemove:{}", e);
@@ -777,7 +1039,7 @@ public class RedisService implements IRedisService {
      */
     @Override
     public boolean add(String key, Object value, double score) {
-        return redisTemplate.opsForZSet().add(key, value, score);
+        return call(() -> redisTemplate.opsForZSet().add(key, value, score));
     }
 
     /**
@@ -792,7 +1054,7 @@ public class RedisService implements IRedisService {
      */
     @Override
     public Long batchAddZset(String key, Set<ZSetOperations.TypedTuple<Object>> tuples) {
-        return redisTemplate.opsForZSet().add(key, tuples);
+        return call(() -> redisTemplate.opsForZSet().add(key, tuples));
     }
 
     /**
@@ -804,7 +1066,7 @@ public class RedisService implements IRedisService {
      */
     @Override
     public Long removeZset(String key, Object... values) {
-        return redisTemplate.opsForZSet().remove(key, values);
+        return call(() -> redisTemplate.opsForZSet().remove(key, values));
     }
 
     /**
@@ -817,7 +1079,7 @@ public class RedisService implements IRedisService {
      */
     @Override
     public Double incrementScore(String key, Object value, double score) {
-        return redisTemplate.opsForZSet().incrementScore(key, value, score);
+        return call(() -> redisTemplate.opsForZSet().incrementScore(key, value, score));
     }
 
     /**
@@ -829,7 +1091,7 @@ public class RedisService implements IRedisService {
      */
     @Override
     public Long rank(String key, Object value) {
-        return redisTemplate.opsForZSet().rank(key, value);
+        return call(() -> redisTemplate.opsForZSet().rank(key, value));
     }
 
     /**
@@ -841,7 +1103,7 @@ public class RedisService implements IRedisService {
      */
     @Override
     public Long reverseRank(String key, Object value) {
-        return redisTemplate.opsForZSet().reverseRank(key, value);
+        return call(() -> redisTemplate.opsForZSet().reverseRank(key, value));
     }
 
     /**
@@ -854,7 +1116,7 @@ public class RedisService implements IRedisService {
      */
     @Override
     public Set<ZSetOperations.TypedTuple<Object>> rangeWithScores(String key, long start, long end) {
-        return redisTemplate.opsForZSet().rangeWithScores(key, start, end);
+        return call(() -> redisTemplate.opsForZSet().rangeWithScores(key, start, end));
     }
 
     /**
@@ -867,7 +1129,7 @@ public class RedisService implements IRedisService {
      */
     @Override
     public Set<Object> range(String key, long start, long end) {
-        return redisTemplate.opsForZSet().range(key, start, end);
+        return call(() -> redisTemplate.opsForZSet().range(key, start, end));
     }
 
     /**
@@ -880,7 +1142,7 @@ public class RedisService implements IRedisService {
      */
     @Override
     public Set<Object> rangeByScore(String key, double min, double max) {
-        return redisTemplate.opsForZSet().rangeByScore(key, min, max);
+        return call(() -> redisTemplate.opsForZSet().rangeByScore(key, min, max));
     }
 
     /**
@@ -893,7 +1155,7 @@ public class RedisService implements IRedisService {
      */
     @Override
     public Set<ZSetOperations.TypedTuple<Object>> rangeByScoreWithScores(String key, double min, double max) {
-        return redisTemplate.opsForZSet().rangeByScoreWithScores(key, min, max);
+        return call(() -> redisTemplate.opsForZSet().rangeByScoreWithScores(key, min, max));
     }
 
     /**
@@ -908,7 +1170,7 @@ public class RedisService implements IRedisService {
      */
     @Override
     public Set<Object> rangeByScore(String key, double min, double max, long offset, long count) {
-        return redisTemplate.opsForZSet().rangeByScore(key, min, max, offset, count);
+        return call(() -> redisTemplate.opsForZSet().rangeByScore(key, min, max, offset, count));
     }
 
     /**
@@ -923,7 +1185,7 @@ public class RedisService implements IRedisService {
      */
     @Override
     public Set<ZSetOperations.TypedTuple<Object>> rangeByScoreWithScores(String key, double min, double max, long offset, long count) {
-        return redisTemplate.opsForZSet().rangeByScoreWithScores(key, min, max, offset, count);
+        return call(() -> redisTemplate.opsForZSet().rangeByScoreWithScores(key, min, max, offset, count));
     }
 
     /**
@@ -936,7 +1198,7 @@ public class RedisService implements IRedisService {
      */
     @Override
     public Set<Object> reverseRange(String key, long start, long end) {
-        return redisTemplate.opsForZSet().reverseRange(key, start, end);
+        return call(() -> redisTemplate.opsForZSet().reverseRange(key, start, end));
     }
 
     /**
@@ -949,7 +1211,7 @@ public class RedisService implements IRedisService {
      */
     @Override
     public Set<ZSetOperations.TypedTuple<Object>> reverseRangeWithScores(String key, long start, long end) {
-        return redisTemplate.opsForZSet().reverseRangeWithScores(key, start, end);
+        return call(() -> redisTemplate.opsForZSet().reverseRangeWithScores(key, start, end));
     }
 
     /**
@@ -962,7 +1224,7 @@ public class RedisService implements IRedisService {
      */
     @Override
     public Set<Object> reverseRangeByScore(String key, double min, double max) {
-        return redisTemplate.opsForZSet().reverseRangeByScore(key, min, max);
+        return call(() -> redisTemplate.opsForZSet().reverseRangeByScore(key, min, max));
     }
 
     /**
@@ -975,7 +1237,7 @@ public class RedisService implements IRedisService {
      */
     @Override
     public Set<ZSetOperations.TypedTuple<Object>> reverseRangeByScoreWithScores(String key, double min, double max) {
-        return redisTemplate.opsForZSet().reverseRangeByScoreWithScores(key, min, max);
+        return call(() -> redisTemplate.opsForZSet().reverseRangeByScoreWithScores(key, min, max));
     }
 
     /**
@@ -990,7 +1252,7 @@ public class RedisService implements IRedisService {
      */
     @Override
     public Set<Object> reverseRangeByScore(String key, double min, double max, long offset, long count) {
-        return redisTemplate.opsForZSet().reverseRangeByScore(key, min, max, offset, count);
+        return call(() -> redisTemplate.opsForZSet().reverseRangeByScore(key, min, max, offset, count));
     }
 
     /**
@@ -1005,7 +1267,7 @@ public class RedisService implements IRedisService {
      */
     @Override
     public Set<ZSetOperations.TypedTuple<Object>> reverseRangeByScoreWithScores(String key, double min, double max, long offset, long count) {
-        return redisTemplate.opsForZSet().reverseRangeByScoreWithScores(key, min, max, offset, count);
+        return call(() -> redisTemplate.opsForZSet().reverseRangeByScoreWithScores(key, min, max, offset, count));
     }
 
     /**
@@ -1018,7 +1280,7 @@ public class RedisService implements IRedisService {
      */
     @Override
     public long countZSet(String key, double min, double max) {
-        return redisTemplate.opsForZSet().count(key, min, max);
+        return call(() -> redisTemplate.opsForZSet().count(key, min, max));
     }
 
     /**
@@ -1029,7 +1291,7 @@ public class RedisService implements IRedisService {
      */
     @Override
     public long sizeZset(String key) {
-        return redisTemplate.opsForZSet().size(key);
+        return call(() -> redisTemplate.opsForZSet().size(key));
     }
 
     /**
@@ -1041,7 +1303,7 @@ public class RedisService implements IRedisService {
      */
     @Override
     public Double score(String key, Object value) {
-        return redisTemplate.opsForZSet().score(key, value);
+        return call(() -> redisTemplate.opsForZSet().score(key, value));
     }
 
     /**
@@ -1054,7 +1316,7 @@ public class RedisService implements IRedisService {
      */
     @Override
     public Long removeRange(String key, long start, long end) {
-        return redisTemplate.opsForZSet().removeRange(key, start, end);
+        return call(() -> redisTemplate.opsForZSet().removeRange(key, start, end));
     }
 
     /**
@@ -1067,7 +1329,7 @@ public class RedisService implements IRedisService {
      */
     @Override
     public Long removeRangeByScore(String key, double min, double max) {
-        return redisTemplate.opsForZSet().removeRangeByScore(key, min, max);
+        return call(() -> redisTemplate.opsForZSet().removeRangeByScore(key, min, max));
     }
 
     /**
@@ -1080,7 +1342,7 @@ public class RedisService implements IRedisService {
      */
     @Override
     public Long unionAndStoreZset(String key, String otherKey, String destKey) {
-        return redisTemplate.opsForZSet().unionAndStore(key, otherKey, destKey);
+        return call(() -> redisTemplate.opsForZSet().unionAndStore(key, otherKey, destKey));
     }
 
     /**
@@ -1093,7 +1355,7 @@ public class RedisService implements IRedisService {
      */
     @Override
     public Long unionAndStoreZset(String key, Collection<String> otherKeys, String destKey) {
-        return redisTemplate.opsForZSet().unionAndStore(key, otherKeys, destKey);
+        return call(() -> redisTemplate.opsForZSet().unionAndStore(key, otherKeys, destKey));
     }
 
     /**
@@ -1106,7 +1368,7 @@ public class RedisService implements IRedisService {
      */
     @Override
     public Long intersectAndStore(String key, String otherKey, String destKey) {
-        return redisTemplate.opsForZSet().intersectAndStore(key, otherKey, destKey);
+        return call(() -> redisTemplate.opsForZSet().intersectAndStore(key, otherKey, destKey));
     }
 
     /**
@@ -1119,6 +1381,198 @@ public class RedisService implements IRedisService {
      */
     @Override
     public Long intersectAndStore(String key, Collection<String> otherKeys, String destKey) {
-        return redisTemplate.opsForZSet().intersectAndStore(key, otherKeys, destKey);
+        return call(() -> redisTemplate.opsForZSet().intersectAndStore(key, otherKeys, destKey));
+    }
+
+    // ============================pipeline=============================
+
+    @Override
+    public List<Object> multiGet(List<String> keys) {
+        if (keys.isEmpty()) {
+            return new ArrayList<>();
+        }
+        if (!circuitBreaker.allowRequest()) {
+            return fallbackGet(keys);
+        }
+        try {
+            List<Object> values = redisTemplate.opsForValue().multiGet(keys);
+            circuitBreaker.onSuccess();
+            return values == null ? fallbackGet(keys) : values;
+        } catch (RuntimeException e) {
+            onError(e);
+            log.warn("multiGet failed: {}", e.getMessage());
+            return fallbackGet(keys);
+        }
+    }
+
+    private List<Object> fallbackGet(List<String> keys) {
+        List<Object> values = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            values.add(fallback.get(key));
+        }
+        return values;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void multiSet(Map<String, Object> map, long time) {
+        if (map.isEmpty()) {
+            return;
+        }
+        if (!circuitBreaker.allowRequest()) {
+            map.forEach((key, value) -> fallback.put(key, value, time * 1000));
+            return;
+        }
+        try {
+            redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                    ValueOperations<String, Object> ops = (ValueOperations<String, Object>) operations.opsForValue();
+                    for (Map.Entry<String, Object> entry : map.entrySet()) {
+                        if (time > 0) {
+                            ops.set(entry.getKey(), entry.getValue(), time, TimeUnit.SECONDS);
+                        } else {
+                            ops.set(entry.getKey(), entry.getValue());
+                        }
+                    }
+                    return null;
+                }
+            });
+            circuitBreaker.onSuccess();
+        } catch (Exception e) {
+            onError(e);
+            log.error("multiSet:{}", e);
+        }
+    }
+
+    @Override
+    public long multiDel(Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return 0;
+        }
+        for (String key : keys) {
+            fallback.remove(key);
+        }
+        if (!circuitBreaker.allowRequest()) {
+            return 0;
+        }
+        List<byte[][]> batches = new ArrayList<>();
+        List<byte[]> batch = new ArrayList<>(BATCH_SIZE);
+        for (String key : keys) {
+            batch.add(key.getBytes(StandardCharsets.UTF_8));
+            if (batch.size() == BATCH_SIZE) {
+                batches.add(batch.toArray(new byte[0][]));
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch.toArray(new byte[0][]));
+        }
+        try {
+            List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (byte[][] b : batches) {
+                    connection.del(b);
+                }
+                return null;
+            });
+            circuitBreaker.onSuccess();
+            long count = 0;
+            for (Object result : results) {
+                if (result instanceof Number) {
+                    count += ((Number) result).longValue();
+                }
+            }
+            return count;
+        } catch (Exception e) {
+            onError(e);
+            log.error("multiDel:{}", e);
+            return 0;
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void multiSSetAndTime(Collection<String> keys, long time, Object value) {
+        if (keys.isEmpty() || !circuitBreaker.allowRequest()) {
+            return;
+        }
+        try {
+            redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                    RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                    for (String key : keys) {
+                        ops.opsForSet().add(key, value);
+                        if (time > 0) {
+                            ops.expire(key, time, TimeUnit.SECONDS);
+                        }
+                    }
+                    return null;
+                }
+            });
+            circuitBreaker.onSuccess();
+        } catch (Exception e) {
+            onError(e);
+            log.error("multiSSetAndTime:{}", e);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void batchIncrementScore(String key, Map<Object, Double> scores) {
+        if (scores.isEmpty() || !circuitBreaker.allowRequest()) {
+            return;
+        }
+        try {
+            redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                    ZSetOperations<String, Object> ops = (ZSetOperations<String, Object>) operations.opsForZSet();
+                    for (Map.Entry<Object, Double> entry : scores.entrySet()) {
+                        ops.incrementScore(key, entry.getKey(), entry.getValue());
+                    }
+                    return null;
+                }
+            });
+            circuitBreaker.onSuccess();
+        } catch (Exception e) {
+            onError(e);
+            log.error("batchIncrementScore:{}", e);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Set<ZSetOperations.TypedTuple<Object>>> batchReverseRangeWithScores(List<String> keys, long start, long end) {
+        List<Set<ZSetOperations.TypedTuple<Object>>> list = new ArrayList<>(keys.size());
+        if (keys.isEmpty() || !circuitBreaker.allowRequest()) {
+            return list;
+        }
+        try {
+            List<Object> results = redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                    ZSetOperations<String, Object> ops = (ZSetOperations<String, Object>) operations.opsForZSet();
+                    for (String key : keys) {
+                        ops.reverseRangeWithScores(key, start, end);
+                    }
+                    return null;
+                }
+            });
+            circuitBreaker.onSuccess();
+            for (Object result : results) {
+                list.add((Set<ZSetOperations.TypedTuple<Object>>) result);
+            }
+        } catch (Exception e) {
+            onError(e);
+            log.error("batchReverseRangeWithScores:{}", e);
+        }
+        return list;
+    }
+
+    @Override
+    public Long scaleZset(String key, double factor) {
+        return call(() -> redisTemplate.opsForZSet().unionAndStore(key, Collections.<String>emptyList(), key,
+                RedisZSetCommands.Aggregate.SUM, RedisZSetCommands.Weights.of(factor)));
     }
 }
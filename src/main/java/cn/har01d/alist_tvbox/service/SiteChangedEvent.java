@@ -0,0 +1,24 @@
+package cn.har01d.alist_tvbox.service;
+
+import lombok.Getter;
+
+/**
+ * 站点新增、修改或删除后发布
+ */
+@Getter
+public class SiteChangedEvent {
+    private final int siteId;
+    /**
+     * 是否由其它节点修改，这种事件不再广播
+     */
+    private final boolean remote;
+
+    public SiteChangedEvent(int siteId) {
+        this(siteId, false);
+    }
+
+    public SiteChangedEvent(int siteId, boolean remote) {
+        this.siteId = siteId;
+        this.remote = remote;
+    }
+}
@@ -0,0 +1,150 @@
+package cn.har01d.alist_tvbox.service;
+
+import cn.har01d.alist_tvbox.config.AppProperties;
+import cn.har01d.alist_tvbox.util.AdaptiveLimiter;
+import cn.har01d.alist_tvbox.util.CircuitBreaker;
+import cn.har01d.alist_tvbox.util.LatencyWindow;
+import cn.har01d.alist_tvbox.util.RequestPriority;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 一个站点的健康状态：最近调用的错误率和耗时、熔断器、自适应并发限制，以及按 p99 调整读超时的 RestTemplate
+ */
+public class SiteHealth {
+    private static final int WINDOW_SIZE = 200;
+    private static final int MIN_SAMPLES = 20;
+    private static final int UPDATE_INTERVAL = 10;
+
+    private final AppProperties appProperties;
+    private final CircuitBreaker circuitBreaker;
+    private final AdaptiveLimiter limiter;
+    private final LatencyWindow window = new LatencyWindow(WINDOW_SIZE);
+    private final SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory() {
+        @Override
+        protected void prepareConnection(HttpURLConnection connection, String httpMethod) throws IOException {
+            super.prepareConnection(connection, httpMethod);
+            // 工厂的 readTimeout 字段不是 volatile，调整后其它线程不一定能看到，每个连接读取最新的值
+            connection.setReadTimeout(readTimeout);
+        }
+    };
+    private final RestTemplate restTemplate;
+    private final AtomicInteger samples = new AtomicInteger();
+    private volatile int readTimeout;
+
+    SiteHealth(String name, RestTemplateBuilder builder, AppProperties appProperties) {
+        this.appProperties = appProperties;
+        this.circuitBreaker = new CircuitBreaker("site " + name, appProperties.getSiteFailureThreshold(),
+                appProperties.getSiteOpenTime() * 1000L);
+        this.limiter = new AdaptiveLimiter(appProperties.getSiteConcurrency(), appProperties.getSiteMaxConcurrency(),
+                appProperties.getSiteQueueSize());
+        this.readTimeout = appProperties.getSiteMaxTimeout();
+        this.requestFactory.setConnectTimeout(appProperties.getSiteConnectTimeout());
+        this.restTemplate = builder.requestFactory(() -> requestFactory).build();
+    }
+
+    public RestTemplate getRestTemplate() {
+        return restTemplate;
+    }
+
+    /**
+     * 并发达到限制时按当前线程的优先级排队，最多等待 siteQueueTimeout 毫秒
+     *
+     * @return 是否获得许可，获得后必须调用 release 或者 cancel
+     */
+    public boolean acquire() {
+        try {
+            return limiter.acquire(RequestPriority.isBackground(), appProperties.getSiteQueueTimeout());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * 获得许可后没有发出请求
+     */
+    public void cancel() {
+        limiter.cancel();
+    }
+
+    /**
+     * 请求完成，归还许可并记录耗时和结果
+     */
+    public void release(long millis, boolean success) {
+        limiter.release(millis, success);
+        record(millis, success);
+    }
+
+    /**
+     * 熔断器打开时只放行一次探测
+     */
+    public boolean allowRequest() {
+        return circuitBreaker.allowRequest() || circuitBreaker.tryHalfOpen();
+    }
+
+    /**
+     * 关闭或者可以探测时认为可用，用于在分类和搜索中跳过不可用的站点
+     */
+    public boolean isAvailable() {
+        return circuitBreaker.isClosed() || circuitBreaker.canProbe();
+    }
+
+    /**
+     * @return 样本不够时返回 0
+     */
+    public long getLatency(double quantile) {
+        return window.getCount() < MIN_SAMPLES ? 0 : window.percentile(quantile);
+    }
+
+    private void record(long millis, boolean success) {
+        window.record(millis, success);
+        if (success) {
+            boolean probing = circuitBreaker.getState() == CircuitBreaker.State.HALF_OPEN;
+            circuitBreaker.onSuccess();
+            if (probing) {
+                // 恢复后不再用故障期间的数据计算错误率和超时
+                window.clear();
+            }
+        } else {
+            circuitBreaker.onFailure();
+            if (window.getCount() >= MIN_SAMPLES && window.getErrorRate() >= appProperties.getSiteErrorRate()) {
+                circuitBreaker.trip();
+            }
+        }
+
+        if (samples.incrementAndGet() % UPDATE_INTERVAL == 0) {
+            updateTimeout();
+        }
+    }
+
+    /**
+     * 读超时为 p99 的两倍，限制在 siteMinTimeout 和 siteMaxTimeout 之间；数据不够时用最大值
+     */
+    private void updateTimeout() {
+        int timeout = appProperties.getSiteMaxTimeout();
+        if (window.getCount() >= MIN_SAMPLES) {
+            long p99 = window.percentile(0.99);
+            timeout = (int) Math.max(appProperties.getSiteMinTimeout(), Math.min(timeout, p99 * 2));
+        }
+        readTimeout = timeout;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>(circuitBreaker.getStats());
+        stats.put("samples", window.getCount());
+        stats.put("errorRate", window.getErrorRate());
+        stats.put("p50", window.percentile(0.5));
+        stats.put("p99", window.percentile(0.99));
+        stats.put("readTimeout", readTimeout);
+        stats.put("limiter", limiter.getStats());
+        return stats;
+    }
+}
@@ -0,0 +1,50 @@
+package cn.har01d.alist_tvbox.service;
+
+import cn.har01d.alist_tvbox.config.AppProperties;
+import cn.har01d.alist_tvbox.entity.Site;
+import cn.har01d.alist_tvbox.util.Constants;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按站点记录 AList 调用的健康状态，站点修改后重新开始统计
+ */
+@Service
+public class SiteHealthService {
+    private final RestTemplateBuilder builder;
+    private final AppProperties appProperties;
+    private final Map<Integer, SiteHealth> sites = new ConcurrentHashMap<>();
+
+    public SiteHealthService(RestTemplateBuilder builder, AppProperties appProperties) {
+        this.builder = builder
+                .defaultHeader(HttpHeaders.ACCEPT, Constants.ACCEPT)
+                .defaultHeader(HttpHeaders.USER_AGENT, Constants.USER_AGENT);
+        this.appProperties = appProperties;
+    }
+
+    public SiteHealth get(Site site) {
+        return sites.computeIfAbsent(site.getId(), id -> new SiteHealth(id + ":" + site.getName(), builder, appProperties));
+    }
+
+    public boolean isAvailable(Site site) {
+        SiteHealth health = sites.get(site.getId());
+        return health == null || health.isAvailable();
+    }
+
+    @EventListener
+    public void onSiteChanged(SiteChangedEvent event) {
+        sites.remove(event.getSiteId());
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        sites.forEach((id, health) -> stats.put(String.valueOf(id), health.getStats()));
+        return stats;
+    }
+}
@@ -8,29 +8,43 @@ import cn.har01d.alist_tvbox.exception.BadRequestException;
 import cn.har01d.alist_tvbox.exception.NotFoundException;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
 import java.io.File;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * 站点保存在数据库中，读取使用内存中的不可变快照。站点修改后重新加载整个快照，
+ * 其它节点由 SiteSyncService 通知重新加载。站点是可以修改的实体，读取时返回副本，调用方修改不会影响快照。
+ */
 @Slf4j
 @Service
 public class SiteService {
     private final AppProperties appProperties;
     private final SiteRepository siteRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final AtomicReference<Registry> registry = new AtomicReference<>(Registry.EMPTY);
 
-    public SiteService(AppProperties appProperties, SiteRepository siteRepository) {
+    public SiteService(AppProperties appProperties, SiteRepository siteRepository, ApplicationEventPublisher eventPublisher) {
         this.appProperties = appProperties;
         this.siteRepository = siteRepository;
+        this.eventPublisher = eventPublisher;
     }
 
     @PostConstruct
     public void init() {
         if (siteRepository.count() > 0) {
+            reload();
             return;
         }
 
@@ -42,29 +56,79 @@ public class SiteService {
             site.setPassword(s.getPassword());
             site.setSearchable(s.isSearchable());
             site.setIndexFile(s.getIndexFile());
+            site.setProxyPlay(s.isProxyPlay());
+            site.setIndexBrowse(s.isIndexBrowse());
+            site.setMirrorGroup(StringUtils.trimToNull(s.getMirrorGroup()));
             site.setOrder(order++);
             site.setVersion(3);
             siteRepository.save(site);
             log.info("save site to database: {}", site);
         }
+        reload();
+    }
+
+    /**
+     * 从数据库重新加载所有站点，替换内存中的快照
+     */
+    public void reload() {
+        Registry current = new Registry(siteRepository.findAll(Sort.by("order")));
+        registry.set(current);
+        log.debug("load {} sites", current.all.size());
     }
 
     public Site getById(Integer id) {
-        return siteRepository.findById(id).orElseThrow(() -> new NotFoundException("站点不存在"));
+        return findById(id).orElseThrow(() -> new NotFoundException("站点不存在"));
+    }
+
+    /**
+     * 站点可能已经被删除
+     */
+    public Optional<Site> findById(Integer id) {
+        return Optional.ofNullable(registry.get().byId.get(id)).map(SiteService::copy);
     }
 
     public Site getByName(String name) {
-        return siteRepository.findByName(name).orElseThrow(() -> new NotFoundException("站点不存在"));
+        Site site = registry.get().byName.get(name);
+        if (site == null) {
+            throw new NotFoundException("站点不存在");
+        }
+        return copy(site);
     }
 
     public List<Site> findAll() {
-        Sort sort = Sort.by("order");
-        return siteRepository.findAll(sort);
+        return copy(registry.get().all);
     }
 
+    /**
+     * 没有禁用的站点，按顺序排列
+     */
     public List<Site> list() {
-        Sort sort = Sort.by("order");
-        return siteRepository.findAllByDisabledFalse(sort);
+        return copy(registry.get().enabled);
+    }
+
+    private static List<Site> copy(List<Site> sites) {
+        List<Site> list = new ArrayList<>(sites.size());
+        for (Site site : sites) {
+            list.add(copy(site));
+        }
+        return list;
+    }
+
+    private static Site copy(Site site) {
+        Site copy = new Site();
+        copy.setId(site.getId());
+        copy.setName(site.getName());
+        copy.setUrl(site.getUrl());
+        copy.setPassword(site.getPassword());
+        copy.setIndexFile(site.getIndexFile());
+        copy.setSearchable(site.isSearchable());
+        copy.setDisabled(site.isDisabled());
+        copy.setProxyPlay(site.isProxyPlay());
+        copy.setIndexBrowse(site.isIndexBrowse());
+        copy.setMirrorGroup(site.getMirrorGroup());
+        copy.setOrder(site.getOrder());
+        copy.setVersion(site.getVersion());
+        return copy;
     }
 
     public Site create(SiteDto dto) {
@@ -84,7 +148,13 @@ public class SiteService {
         site.setSearchable(dto.isSearchable());
         site.setIndexFile(dto.getIndexFile());
         site.setDisabled(dto.isDisabled());
-        return siteRepository.save(site);
+        site.setProxyPlay(dto.isProxyPlay());
+        site.setIndexBrowse(dto.isIndexBrowse());
+        site.setMirrorGroup(StringUtils.trimToNull(dto.getMirrorGroup()));
+        site = siteRepository.save(site);
+        reload();
+        eventPublisher.publishEvent(new SiteChangedEvent(site.getId()));
+        return site;
     }
 
     public Site update(int id, SiteDto dto) {
@@ -106,7 +176,13 @@ public class SiteService {
         site.setSearchable(dto.isSearchable());
         site.setIndexFile(dto.getIndexFile());
         site.setDisabled(dto.isDisabled());
-        return siteRepository.save(site);
+        site.setProxyPlay(dto.isProxyPlay());
+        site.setIndexBrowse(dto.isIndexBrowse());
+        site.setMirrorGroup(StringUtils.trimToNull(dto.getMirrorGroup()));
+        site = siteRepository.save(site);
+        reload();
+        eventPublisher.publishEvent(new SiteChangedEvent(id));
+        return site;
     }
 
     private void validate(SiteDto dto) {
@@ -144,9 +220,55 @@ public class SiteService {
 
     public void delete(int id) {
         siteRepository.deleteById(id);
+        reload();
+        eventPublisher.publishEvent(new SiteChangedEvent(id));
+    }
+
+    /**
+     * 保存检测到的版本，不通知其它节点。修改从数据库读取的副本，快照中的对象不变，
+     * 只替换快照中的这个站点
+     */
+    public void updateVersion(Integer id, int version) {
+        Site site = siteRepository.findById(id).orElse(null);
+        if (site == null) {
+            return;
+        }
+        site.setVersion(version);
+        Site saved = siteRepository.save(site);
+        registry.updateAndGet(current -> current.replace(saved));
     }
 
-    public void save(Site site) {
-        siteRepository.save(site);
+    private static final class Registry {
+        private static final Registry EMPTY = new Registry(Collections.<Site>emptyList());
+
+        private final List<Site> all;
+        private final List<Site> enabled;
+        private final Map<Integer, Site> byId;
+        private final Map<String, Site> byName;
+
+        private Registry(List<Site> sites) {
+            Map<Integer, Site> ids = new HashMap<>();
+            Map<String, Site> names = new HashMap<>();
+            List<Site> list = new ArrayList<>();
+            for (Site site : sites) {
+                ids.put(site.getId(), site);
+                names.put(site.getName(), site);
+                if (!site.isDisabled()) {
+                    list.add(site);
+                }
+            }
+            this.all = Collections.unmodifiableList(new ArrayList<>(sites));
+            this.enabled = Collections.unmodifiableList(list);
+            this.byId = Collections.unmodifiableMap(ids);
+            this.byName = Collections.unmodifiableMap(names);
+        }
+
+        private Registry replace(Site site) {
+            List<Site> sites = new ArrayList<>(all.size());
+            for (Site s : all) {
+                sites.add(s.getId().equals(site.getId()) ? site : s);
+            }
+            return new Registry(sites);
+        }
     }
 }
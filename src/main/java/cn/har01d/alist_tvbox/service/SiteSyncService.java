@@ -0,0 +1,79 @@
+package cn.har01d.alist_tvbox.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.UUID;
+
+/**
+ * 站点修改后通过 Redis 通知其它节点，收到通知的节点重新加载站点并在本地发布 SiteChangedEvent
+ */
+@Slf4j
+@Service
+public class SiteSyncService implements MessageListener {
+    public static final String CHANNEL = "site:changed";
+    private static final String SEPARATOR = "|";
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final SiteService siteService;
+    private final IRedisService redisService;
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final RedisMessageListenerContainer container;
+    private final ApplicationEventPublisher eventPublisher;
+
+    public SiteSyncService(SiteService siteService, IRedisService redisService, RedisTemplate<String, Object> redisTemplate,
+                           RedisMessageListenerContainer container, ApplicationEventPublisher eventPublisher) {
+        this.siteService = siteService;
+        this.redisService = redisService;
+        this.redisTemplate = redisTemplate;
+        this.container = container;
+        this.eventPublisher = eventPublisher;
+    }
+
+    @PostConstruct
+    public void init() {
+        container.addMessageListener(this, new ChannelTopic(CHANNEL));
+    }
+
+    @EventListener
+    public void onSiteChanged(SiteChangedEvent event) {
+        if (event.isRemote()) {
+            return;
+        }
+        try {
+            redisService.publish(CHANNEL, nodeId + SEPARATOR + event.getSiteId());
+        } catch (Exception e) {
+            log.warn("publish site change failed: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Object body = redisTemplate.getValueSerializer().deserialize(message.getBody());
+        if (!(body instanceof String)) {
+            return;
+        }
+        String text = (String) body;
+        int index = text.indexOf(SEPARATOR);
+        if (index < 0 || text.substring(0, index).equals(nodeId)) {
+            return;
+        }
+
+        try {
+            int siteId = Integer.parseInt(text.substring(index + 1));
+            log.info("site {} changed by other node, reload sites", siteId);
+            siteService.reload();
+            eventPublisher.publishEvent(new SiteChangedEvent(siteId, true));
+        } catch (Exception e) {
+            log.warn("handle site change {} failed: {}", text, e.getMessage());
+        }
+    }
+}
@@ -8,12 +8,13 @@ import cn.har01d.alist_tvbox.tvbox.Category;
 import cn.har01d.alist_tvbox.tvbox.CategoryList;
 import cn.har01d.alist_tvbox.tvbox.MovieDetail;
 import cn.har01d.alist_tvbox.tvbox.MovieList;
+import cn.har01d.alist_tvbox.util.RequestPriority;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
-import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import javax.annotation.PreDestroy;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
@@ -24,9 +25,14 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import static cn.har01d.alist_tvbox.util.Constants.*;
+import static cn.har01d.alist_tvbox.util.ListingUtils.fixPath;
+import static cn.har01d.alist_tvbox.util.ListingUtils.getCover;
 
 @Slf4j
 @Service
@@ -39,8 +45,14 @@ public class TvBoxService {
     private final IndexService indexService;
     private final MovieService movieService;
     private final SiteService siteService;
+    private final DirectoryMetadataResolver directoryMetadataResolver;
+    private final DirectorySnapshotService directorySnapshotService;
+    private final IndexTreeService indexTreeService;
+    private final SiteHealthService siteHealthService;
+    private final PlayUrlRewriter playUrlRewriter;
     private final AppProperties appProperties;
     private final ExecutorService executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    private final ExecutorService browseExecutor;
     private final List<FilterValue> filters = Arrays.asList(
             new FilterValue("原始顺序", ""),
             new FilterValue("名字⬆️", "name,asc"),
@@ -52,18 +64,40 @@ public class TvBoxService {
     );
 
 
-    public TvBoxService(AListService aListService, IndexService indexService, MovieService movieService, SiteService siteService, AppProperties appProperties) {
+    public TvBoxService(AListService aListService, IndexService indexService, MovieService movieService, SiteService siteService, DirectoryMetadataResolver directoryMetadataResolver, DirectorySnapshotService directorySnapshotService, IndexTreeService indexTreeService, SiteHealthService siteHealthService, PlayUrlRewriter playUrlRewriter, AppProperties appProperties) {
         this.aListService = aListService;
         this.indexService = indexService;
         this.movieService = movieService;
         this.siteService = siteService;
+        this.directoryMetadataResolver = directoryMetadataResolver;
+        this.directorySnapshotService = directorySnapshotService;
+        this.indexTreeService = indexTreeService;
+        this.siteHealthService = siteHealthService;
+        this.playUrlRewriter = playUrlRewriter;
         this.appProperties = appProperties;
+        AtomicInteger count = new AtomicInteger();
+        this.browseExecutor = Executors.newFixedThreadPool(Math.max(1, appProperties.getBrowseThreads()), r -> {
+            Thread thread = new Thread(r, "browse-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executorService.shutdownNow();
+        browseExecutor.shutdownNow();
     }
 
     public CategoryList getCategoryList() {
         CategoryList result = new CategoryList();
 
         for (Site site : siteService.list()) {
+            // 熔断中的站点有索引时还能从索引浏览
+            if (!siteHealthService.isAvailable(site) && !indexTreeService.hasIndex(site)) {
+                log.debug("skip unavailable site {}:{}", site.getId(), site.getName());
+                continue;
+            }
             Category category = new Category();
             category.setType_id(site.getId() + "$/");
             category.setType_name(site.getName());
@@ -84,7 +118,7 @@ public class TvBoxService {
             if (site.isSearchable()) {
                 if (StringUtils.hasText(site.getIndexFile())) {
                     futures.add(executorService.submit(() -> searchByFile(site, keyword)));
-                } else {
+                } else if (siteHealthService.isAvailable(site)) {
                     futures.add(executorService.submit(() -> searchByApi(site, keyword)));
                 }
             }
@@ -195,7 +229,7 @@ public class TvBoxService {
         if (index > -1) {
             name = path.substring(index + 1);
         }
-        return isMediaFormat(name);
+        return directorySnapshotService.isMediaFormat(name);
     }
 
     private Site getSite(String tid) {
@@ -215,52 +249,17 @@ public class TvBoxService {
         int index = tid.indexOf('$');
         Site site = getSite(tid);
         String path = tid.substring(index + 1);
-        List<MovieDetail> folders = new ArrayList<>();
-        List<MovieDetail> files = new ArrayList<>();
-        List<MovieDetail> playlists = new ArrayList<>();
         MovieList result = new MovieList();
 
         int size = appProperties.getPageSize();
-        FsResponse fsResponse = aListService.listFiles(site, path, page, size);
-        int total = fsResponse.getTotal();
-
-        for (FsInfo fsInfo : fsResponse.getFiles()) {
-            if (fsInfo.getType() != 1 && fsInfo.getName().equals(PLAYLIST_TXT)) {
-                playlists = generatePlaylistFromFile(site, path + "/" + PLAYLIST_TXT);
-                total--;
-                continue;
-            }
-            if (fsInfo.getType() != 1 && !isMediaFormat(fsInfo.getName())) {
-                total--;
-                continue;
-            }
-
-            MovieDetail movieDetail = new MovieDetail();
-            movieDetail.setVod_id(site.getId() + "$" + fixPath(path + "/" + fsInfo.getName()));
-            movieDetail.setVod_name(fsInfo.getName());
-            movieDetail.setVod_tag(fsInfo.getType() == 1 ? FOLDER : FILE);
-            movieDetail.setVod_pic(getCover(fsInfo.getThumb(), fsInfo.getType()));
-            movieDetail.setVod_remarks(fileSize(fsInfo.getSize()) + (fsInfo.getType() == 1 ? "文件夹" : ""));
-            movieDetail.setVod_time(fsInfo.getModified());
-            movieDetail.setSize(fsInfo.getSize());
-            if (fsInfo.getType() == 1) {
-                folders.add(movieDetail);
-            } else {
-                files.add(movieDetail);
-            }
+        DirectorySnapshot snapshot = getSnapshot(site, path);
+        List<MovieDetail> list = snapshot.getPage(sort, page, size);
+        if (page == 1) {
+            list.addAll(Math.min(snapshot.getFolderCount(), list.size()), snapshot.getPlaylists());
         }
+        int total = snapshot.getTotal();
 
-        sortFiles(sort, folders, files);
-
-        result.getList().addAll(folders);
-
-        if (page == 1 && files.size() > 1 && playlists.isEmpty()) {
-            playlists = generatePlaylist(site.getId() + "$" + fixPath(path + PLAYLIST), total - folders.size(), files);
-        }
-
-        result.getList().addAll(playlists);
-        result.getList().addAll(files);
-
+        result.setList(list);
         result.setPage(page);
         result.setTotal(total);
         result.setLimit(size);
@@ -269,118 +268,87 @@ public class TvBoxService {
         return result;
     }
 
-    private void sortFiles(String sort, List<MovieDetail> folders, List<MovieDetail> files) {
-        if (sort == null) {
-            sort = "name,asc";
-        }
-        Comparator<MovieDetail> comparator;
-        switch (sort) {
-            case "name,asc":
-                comparator = Comparator.comparing(e -> new FileNameInfo(e.getVod_name()));
-                break;
-            case "time,asc":
-                comparator = Comparator.comparing(MovieDetail::getVod_time);
-                break;
-            case "size,asc":
-                comparator = Comparator.comparing(MovieDetail::getSize);
-                break;
-            case "name,desc":
-                comparator = Comparator.comparing(e -> new FileNameInfo(e.getVod_name()));
-                comparator = comparator.reversed();
-                break;
-            case "time,desc":
-                comparator = Comparator.comparing(MovieDetail::getVod_time);
-                comparator = comparator.reversed();
-                break;
-            case "size,desc":
-                comparator = Comparator.comparing(MovieDetail::getSize);
-                comparator = comparator.reversed();
-                break;
-            default:
-                return;
+    /**
+     * indexBrowse 的站点优先使用索引；其它有索引的站点在 AList 超过 browseTimeout 毫秒没有返回时使用索引，
+     * AList 的请求继续在后台完成并写入快照缓存。
+     */
+    private DirectorySnapshot getSnapshot(Site site, String path) {
+        if (site.isIndexBrowse()) {
+            DirectorySnapshot snapshot = indexTreeService.getSnapshot(site, path);
+            return snapshot != null ? snapshot : directorySnapshotService.getSnapshot(site, path);
         }
-        folders.sort(comparator);
-        files.sort(comparator);
-    }
-
-    private List<MovieDetail> generatePlaylistFromFile(Site site, String path) {
-        List<MovieDetail> list = new ArrayList<>();
-        String content = aListService.readFileContent(site, path);
-        if (content != null) {
-            int count = 0;
-            MovieDetail movieDetail = new MovieDetail();
-            movieDetail.setVod_id(site.getId() + "$" + path + "#" + 0);
-            movieDetail.setVod_name("播放列表");
-            movieDetail.setVod_tag(FILE);
-            movieDetail.setVod_pic(LIST_PIC);
 
-            for (String line : content.split("[\r\n]")) {
-                String text = line.trim();
-                if (text.isEmpty() || text.startsWith("#")) {
-                    if (text.startsWith("#cover")) {
-                        movieDetail.setVod_pic(text.substring("#cover".length()).trim());
-                    }
-                    continue;
-                }
-                if (text.contains(",#genre#")) {
-                    if (count > 0) {
-                        movieDetail.setVod_remarks("共" + count + "集");
-                        list.add(movieDetail);
-                    }
-                    count = 0;
-                    String[] parts = text.split(",");
-                    movieDetail = new MovieDetail();
-                    movieDetail.setVod_id(site.getId() + "$" + path + "#" + list.size());
-                    movieDetail.setVod_name(parts[0]);
-                    movieDetail.setVod_tag(FILE);
-                    movieDetail.setVod_pic(parts.length == 3 ? parts[2].trim() : LIST_PIC);
-                } else {
-                    count++;
-                }
-            }
+        long timeout = appProperties.getBrowseTimeout();
+        if (timeout <= 0 || !indexTreeService.hasIndex(site)) {
+            return directorySnapshotService.getSnapshot(site, path);
+        }
+        DirectorySnapshot snapshot = directorySnapshotService.getCached(site, path);
+        if (snapshot != null) {
+            return snapshot;
+        }
 
-            if (count > 0) {
-                movieDetail.setVod_remarks("共" + count + "集");
-                list.add(movieDetail);
+        Future<DirectorySnapshot> future = browseExecutor.submit(RequestPriority.inherit(() -> directorySnapshotService.getSnapshot(site, path)));
+        try {
+            return future.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            snapshot = indexTreeService.getSnapshot(site, path);
+            if (snapshot != null) {
+                log.warn("list {}:{} {} from index: {}", site.getId(), site.getName(), path,
+                        e instanceof TimeoutException ? "timeout" : e.getCause().getMessage());
+                return snapshot;
             }
+            return waitFor(future);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("list files interrupted", e);
         }
-
-        return list;
     }
 
-    private List<MovieDetail> generatePlaylist(String path, int total, List<MovieDetail> files) {
-        MovieDetail movieDetail = new MovieDetail();
-        movieDetail.setVod_id(path);
-        movieDetail.setVod_name("播放列表");
-        movieDetail.setVod_tag(FILE);
-        movieDetail.setVod_pic(LIST_PIC);
-        if (total < appProperties.getPageSize()) {
-            movieDetail.setVod_remarks("共" + files.size() + "集");
+    private DirectorySnapshot waitFor(Future<DirectorySnapshot> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("list files interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
         }
+    }
 
-        List<MovieDetail> list = new ArrayList<>();
-        list.add(movieDetail);
-
-        return list;
+    /**
+     * 预热目录快照
+     */
+    public boolean warmMovieList(String tid, long ahead) {
+        int index = tid.indexOf('$');
+        Site site = getSite(tid);
+        String path = tid.substring(index + 1);
+        return directorySnapshotService.warm(site, path, ahead);
     }
 
-    public String getPlayUrl(Integer siteId, String path,ServletUriComponentsBuilder builder) {
+    /**
+     * 站点设置了镜像组时由 AListService 选择延迟最低的镜像
+     */
+    public String getPlayUrl(Integer siteId, String path) {
         Site site = siteService.getById(siteId);
-        if(path.contains("/有声书/有声小说") && builder.build().getHost().contains("hhzhome")){
-            site = siteService.getById(2);
-        }
         log.info("get play url - site {}:{}  path: {}", site.getId(), site.getName(), path);
         FsDetail fsDetail = aListService.getFile(site, path);
         return fixHttp(fsDetail.getRaw_url());
     }
 
-    @CacheCheck(exTime = 60*60*2)
-    public MovieList getDetail(@CacheCheck String tid,@CacheCheck ServletUriComponentsBuilder builder) {
+    /**
+     * 播放地址中的主机用占位符表示，返回前由 PlayUrlRewriter 替换
+     */
+    @CacheCheck(exTime = 60*60*2, localTime = 300, nullTime = 60, tagged = true)
+    public MovieList getDetail(@CacheCheck String tid) {
         int index = tid.indexOf('$');
         Site site = getSite(tid);
         String path = tid.substring(index + 1);
+        ListingMemo memo = new ListingMemo();
         if (path.contains(PLAYLIST) || path.contains(PLAYLIST_TXT)) {
-            MovieList movieList = getPlaylist(site, path,builder);
+            MovieList movieList = getPlaylist(memo, site, path);
             List<MovieDetail> list = movieList.getList();
             MovieDetail movieDetail = list.get(0);
             for (int i = 1; i < list.size(); i++) {
@@ -404,7 +372,16 @@ public class TvBoxService {
             return movieList;
         }
 
-        FsDetail fsDetail = aListService.getFile(site, path);
+        FsDetail fsDetail;
+        String playUrl;
+        if (site.isProxyPlay()) {
+            // 直链在播放时才解析，缓存里只保存代理地址
+            fsDetail = directoryMetadataResolver.getFileInfo(memo, site, path);
+            playUrl = buildPlayUrl(site, path);
+        } else {
+            fsDetail = directoryMetadataResolver.getFile(memo, site, path);
+            playUrl = fixHttp(fsDetail.getRaw_url());
+        }
         MovieList result = new MovieList();
         MovieDetail movieDetail = new MovieDetail();
         movieDetail.setVod_id(tid);
@@ -413,7 +390,7 @@ public class TvBoxService {
         movieDetail.setVod_time(fsDetail.getModified());
         movieDetail.setVod_pic(getCover(fsDetail.getThumb(), fsDetail.getType()));
         movieDetail.setVod_play_from(fsDetail.getProvider());
-        movieDetail.setVod_play_url(fsDetail.getName() + "$" + fixHttp(fsDetail.getRaw_url()));
+        movieDetail.setVod_play_url(fsDetail.getName() + "$" + playUrl);
         movieDetail.setVod_content(tid);
         movieService.readMetaData(movieDetail, site, path);
         result.getList().add(movieDetail);
@@ -423,26 +400,18 @@ public class TvBoxService {
         return result;
     }
 
-    private String buildPlayUrl(Site site, String path,ServletUriComponentsBuilder builder) {
-        ServletUriComponentsBuilder builder1 = builder.cloneBuilder();
-        if(builder1.build().getPort() == 9443 || builder1.build().getPort() == 443
-          || builder1.build().getPort() == 32443){
-            builder1.scheme("https");
-        }
-        builder1.replacePath("/alist/play");
-        builder1.queryParam("site", String.valueOf(site.getId()));
-        builder1.queryParam("path", encodeUrl(path));
-        return builder1.build().toUriString();
+    private String buildPlayUrl(Site site, String path) {
+        return playUrlRewriter.buildPlayUrl(site.getId(), encodeUrl(path));
     }
 
 
-    public MovieList getPlaylist(Site site, String path,ServletUriComponentsBuilder builder) {
+    private MovieList getPlaylist(ListingMemo memo, Site site, String path) {
         log.info("load playlist {}:{} {}", site.getId(), site.getName(), path);
         if (!path.contains(PLAYLIST)) {
-            return readPlaylistFromFile(site, path,builder);
+            return readPlaylistFromFile(memo, site, path);
         }
         String newPath = getParent(path);
-        FsDetail fsDetail = aListService.getFile(site, newPath);
+        FsDetail fsDetail = directoryMetadataResolver.getDirectory(memo, site, newPath);
 
         MovieDetail movieDetail = new MovieDetail();
         movieDetail.setVod_id(site.getId() + "$" + path);
@@ -453,21 +422,21 @@ public class TvBoxService {
         movieDetail.setVod_tag(FILE);
         movieDetail.setVod_pic(LIST_PIC);
 
-        FsResponse fsResponse = aListService.listFiles(site, newPath, 1, 0);
+        FsResponse fsResponse = directoryMetadataResolver.listFiles(memo, site, newPath);
         List<FsInfo> files = fsResponse.getFiles().stream()
-                .filter(e -> isMediaFormat(e.getName()))
+                .filter(e -> directorySnapshotService.isMediaFormat(e.getName()))
                 .collect(Collectors.toList());
         List<FsInfo> dirs = fsResponse.getFiles().stream()
                 .filter(e -> e.getType() == 1)
                 .collect(Collectors.toList());
 
         if (appProperties.isSort()) {
-            files.sort(Comparator.comparing(e -> new FileNameInfo(e.getName())));
+            NaturalSortKey.sort(files, FsInfo::getName, false);
         }
 
         List<String> list = new ArrayList<>();
         for (FsInfo fsInfo : files) {
-            list.add(getName(fsInfo.getName()) + "$" + buildPlayUrl(site, newPath + "/" + fsInfo.getName(),builder));
+            list.add(getName(fsInfo.getName()) + "$" + buildPlayUrl(site, newPath + "/" + fsInfo.getName()));
         }
 
         movieDetail.setVod_play_url(String.join("#", list));
@@ -476,7 +445,7 @@ public class TvBoxService {
         MovieList result = new MovieList();
         result.getList().add(movieDetail);
         dirs.forEach(d -> {
-            MovieList list1 = getPlaylist(site,path.replace("/~playlist","")+"/"+d.getName()+"/~playlist",builder);
+            MovieList list1 = getPlaylist(memo, site,path.replace("/~playlist","")+"/"+d.getName()+"/~playlist");
             result.getList().addAll(list1.getList());
         });
 
@@ -486,13 +455,13 @@ public class TvBoxService {
         return result;
     }
 
-    private MovieList readPlaylistFromFile(Site site, String path,ServletUriComponentsBuilder builder) {
+    private MovieList readPlaylistFromFile(ListingMemo memo, Site site, String path) {
         List<String> files = new ArrayList<>();
         int id = getPlaylistId(path);
 
         String newPath = getParent(path);
         String pname = "";
-        FsDetail fsDetail = aListService.getFile(site, newPath);
+        FsDetail fsDetail = directoryMetadataResolver.getDirectory(memo, site, newPath);
         MovieDetail movieDetail = new MovieDetail();
         movieDetail.setVod_id(site.getId() + "$" + path);
         movieDetail.setVod_name(fsDetail.getName());
@@ -533,7 +502,7 @@ public class TvBoxService {
             try {
                 String name = line.split(",")[0];
                 String file = line.split(",")[1];
-                list.add(name + "$" + buildPlayUrl(site, newPath + "/" + file,builder));
+                list.add(name + "$" + buildPlayUrl(site, newPath + "/" + file));
             } catch (Exception e) {
                 log.warn("", e);
             }
@@ -585,46 +554,6 @@ public class TvBoxService {
         return -1;
     }
 
-    private static String getCover(String thumb, int type) {
-        String pic = thumb;
-        if (pic.isEmpty() && type == 1) {
-            pic = FOLDER_PIC;
-        }
-        return pic;
-    }
-
-    private String fileSize(long size) {
-        double sz = size;
-        String filesize;
-        if (sz > 1024 * 1024 * 1024 * 1024.0) {
-            sz /= (1024 * 1024 * 1024 * 1024.0);
-            filesize = "TB";
-        } else if (sz > 1024 * 1024 * 1024.0) {
-            sz /= (1024 * 1024 * 1024.0);
-            filesize = "GB";
-        } else if (sz > 1024 * 1024.0) {
-            sz /= (1024 * 1024.0);
-            filesize = "MB";
-        } else {
-            sz /= 1024.0;
-            filesize = "KB";
-        }
-        String remark = "";
-        if (size > 0) {
-            remark = String.format("%.2f%s", sz, filesize);
-        }
-        return remark;
-    }
-
-    private boolean isMediaFormat(String name) {
-        int index = name.lastIndexOf('.');
-        if (index > 0) {
-            String suffix = name.substring(index + 1);
-            return appProperties.getFormats().contains(suffix);
-        }
-        return false;
-    }
-
     private String getParent(String path) {
         int index = path.lastIndexOf('/');
         if (index > 0) {
@@ -641,10 +570,6 @@ public class TvBoxService {
         return name;
     }
 
-    private String fixPath(String path) {
-        return path.replaceAll("/+", "/");
-    }
-
     private String fixHttp(String url) {
         if (url.startsWith("//")) {
             return "http:" + url;
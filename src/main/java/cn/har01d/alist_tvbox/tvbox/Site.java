@@ -10,4 +10,7 @@ public class Site {
     private boolean searchable;
     private String searchApi = "/api/fs/search";
     private String indexFile;
+    private boolean proxyPlay;
+    private boolean indexBrowse;
+    private String mirrorGroup;
 }
@@ -0,0 +1,202 @@
+package cn.har01d.alist_tvbox.util;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 自适应并发限制。成功时按梯度调整: 耗时接近长期平均值时增加，变慢时减小；
+ * 失败或超时时乘性减小。超过限制的请求排队等待，队列满或者等待超时时拒绝。
+ * 交互请求优先，后台请求最多使用限制的 3/4，并且只在没有交互请求排队时放行。
+ */
+public class AdaptiveLimiter {
+    private static final double TOLERANCE = 1.5;
+    private static final double SMOOTHING = 0.2;
+    private static final double BACKOFF = 0.9;
+    private static final int RTT_WINDOW = 100;
+    private static final double BACKGROUND_SHARE = 0.75;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Deque<Waiter> interactive = new ArrayDeque<>();
+    private final Deque<Waiter> background = new ArrayDeque<>();
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueue;
+    private double limit;
+    private double longRtt;
+    private int inFlight;
+
+    private long acquired;
+    private long backgroundAcquired;
+    private long queued;
+    private long rejected;
+    private long timeouts;
+    private long waited;
+    private long waitTime;
+
+    public AdaptiveLimiter(int initialLimit, int maxLimit, int maxQueue) {
+        this.minLimit = 1;
+        this.maxLimit = Math.max(minLimit, maxLimit);
+        this.maxQueue = Math.max(0, maxQueue);
+        this.limit = Math.max(minLimit, Math.min(this.maxLimit, initialLimit));
+    }
+
+    /**
+     * @param isBackground 是否后台请求
+     * @return 是否获得许可，获得后必须调用 release 或者 cancel
+     */
+    public boolean acquire(boolean isBackground, long timeoutMillis) throws InterruptedException {
+        lock.lock();
+        try {
+            boolean free = isBackground
+                    ? interactive.isEmpty() && background.isEmpty() && inFlight < backgroundLimit()
+                    : interactive.isEmpty() && inFlight < (int) limit;
+            if (free) {
+                inFlight++;
+                count(isBackground);
+                return true;
+            }
+            if (interactive.size() + background.size() >= maxQueue) {
+                rejected++;
+                return false;
+            }
+
+            Deque<Waiter> waiters = isBackground ? background : interactive;
+            Waiter waiter = new Waiter(lock.newCondition());
+            waiters.addLast(waiter);
+            queued++;
+            long start = System.nanoTime();
+            long nanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            try {
+                while (!waiter.granted) {
+                    if (nanos <= 0) {
+                        waiters.remove(waiter);
+                        timeouts++;
+                        // 交互请求离开队列后后台请求可能可以执行了
+                        grant();
+                        return false;
+                    }
+                    nanos = waiter.condition.awaitNanos(nanos);
+                }
+            } catch (InterruptedException e) {
+                if (waiter.granted) {
+                    inFlight--;
+                } else {
+                    waiters.remove(waiter);
+                }
+                grant();
+                throw e;
+            }
+            count(isBackground);
+            waited++;
+            waitTime += System.nanoTime() - start;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 请求完成，用耗时和结果调整限制
+     */
+    public void release(long rttMillis, boolean success) {
+        lock.lock();
+        try {
+            int current = inFlight--;
+            update(Math.max(1, rttMillis), success, current);
+            grant();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 没有发出请求，归还许可但不调整限制
+     */
+    public void cancel() {
+        lock.lock();
+        try {
+            inFlight--;
+            grant();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void update(long rtt, boolean success, int current) {
+        if (!success) {
+            limit = Math.max(minLimit, limit * BACKOFF);
+            return;
+        }
+
+        longRtt = longRtt == 0 ? rtt : longRtt + (rtt - longRtt) / RTT_WINDOW;
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRtt / rtt));
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        // 并发远低于限制时不再增加，否则空闲的站点限制会一直增长
+        if (newLimit > limit && current < limit / 2) {
+            return;
+        }
+        newLimit = limit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    }
+
+    private void grant() {
+        while (!interactive.isEmpty() && inFlight < (int) limit) {
+            signal(interactive.pollFirst());
+        }
+        while (interactive.isEmpty() && !background.isEmpty() && inFlight < backgroundLimit()) {
+            signal(background.pollFirst());
+        }
+    }
+
+    private void signal(Waiter waiter) {
+        waiter.granted = true;
+        inFlight++;
+        waiter.condition.signal();
+    }
+
+    private int backgroundLimit() {
+        return Math.max(1, (int) (limit * BACKGROUND_SHARE));
+    }
+
+    private void count(boolean isBackground) {
+        acquired++;
+        if (isBackground) {
+            backgroundAcquired++;
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        lock.lock();
+        try {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("limit", (int) limit);
+            stats.put("inFlight", inFlight);
+            stats.put("waiting", interactive.size());
+            stats.put("backgroundWaiting", background.size());
+            stats.put("acquired", acquired);
+            stats.put("backgroundAcquired", backgroundAcquired);
+            stats.put("queued", queued);
+            stats.put("rejected", rejected);
+            stats.put("timeouts", timeouts);
+            stats.put("avgWaitMs", waited == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(waitTime / waited));
+            stats.put("longRttMs", (long) longRtt);
+            return stats;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static class Waiter {
+        private final Condition condition;
+        private boolean granted;
+
+        Waiter(Condition condition) {
+            this.condition = condition;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package cn.har01d.alist_tvbox.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 熔断器。连续失败达到阈值后打开，打开期间请求直接走降级逻辑；
+ * 打开一段时间后只允许一次探测(半开)，探测成功后关闭，失败则重新打开。
+ */
+@Slf4j
+public class CircuitBreaker {
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openMillis;
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong trips = new AtomicLong();
+    private volatile long openedAt;
+
+    /**
+     * @param openMillis 打开多久之后允许探测
+     */
+    public CircuitBreaker(String name, int failureThreshold, long openMillis) {
+        this.name = name;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * 关闭状态才允许请求，打开和半开时返回 false
+     */
+    public boolean allowRequest() {
+        if (state.get() == State.CLOSED) {
+            return true;
+        }
+        rejected.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * 打开时间已到时切换到半开，只有一个调用方会得到 true，由它去探测
+     */
+    public boolean tryHalfOpen() {
+        return canProbe() && state.compareAndSet(State.OPEN, State.HALF_OPEN);
+    }
+
+    /**
+     * 打开并且已经到了可以探测的时间
+     */
+    public boolean canProbe() {
+        return state.get() == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis;
+    }
+
+    public void onSuccess() {
+        failures.set(0);
+        if (state.compareAndSet(State.HALF_OPEN, State.CLOSED)) {
+            log.info("circuit {} closed", name);
+        }
+    }
+
+    /**
+     * openedAt 在切换状态之前写入，其它线程看到 OPEN 时不会读到旧的时间而立即进入半开
+     */
+    public void onFailure() {
+        long now = System.currentTimeMillis();
+        if (state.get() == State.HALF_OPEN) {
+            openedAt = now;
+            if (state.compareAndSet(State.HALF_OPEN, State.OPEN)) {
+                return;
+            }
+        }
+        if (failures.incrementAndGet() >= failureThreshold && state.get() == State.CLOSED) {
+            openedAt = now;
+            if (state.compareAndSet(State.CLOSED, State.OPEN)) {
+                trips.incrementAndGet();
+                log.warn("circuit {} opened after {} failures", name, failures.get());
+            }
+        }
+    }
+
+    /**
+     * 直接打开，例如启动时就连接失败
+     */
+    public void trip() {
+        if (state.get() == State.OPEN) {
+            return;
+        }
+        openedAt = System.currentTimeMillis();
+        if (state.getAndSet(State.OPEN) != State.OPEN) {
+            trips.incrementAndGet();
+            log.warn("circuit {} opened", name);
+        }
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    public boolean isClosed() {
+        return state.get() == State.CLOSED;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        State current = state.get();
+        stats.put("state", current);
+        stats.put("failures", failures.get());
+        stats.put("trips", trips.get());
+        stats.put("rejected", rejected.get());
+        if (current != State.CLOSED) {
+            stats.put("openedAt", openedAt);
+        }
+        return stats;
+    }
+}
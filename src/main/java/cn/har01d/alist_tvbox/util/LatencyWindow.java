@@ -0,0 +1,67 @@
+package cn.har01d.alist_tvbox.util;
+
+import java.util.Arrays;
+
+/**
+ * 最近 N 次调用的耗时和结果，环形数组保存，用于计算错误率和耗时分位数
+ */
+public class LatencyWindow {
+    private final long[] latencies;
+    private final boolean[] failures;
+    private int next;
+    private int count;
+    private int failed;
+
+    public LatencyWindow(int size) {
+        this.latencies = new long[Math.max(1, size)];
+        this.failures = new boolean[latencies.length];
+    }
+
+    public synchronized void record(long millis, boolean success) {
+        if (count == latencies.length) {
+            if (failures[next]) {
+                failed--;
+            }
+        } else {
+            count++;
+        }
+        latencies[next] = millis;
+        failures[next] = !success;
+        if (!success) {
+            failed++;
+        }
+        next = (next + 1) % latencies.length;
+    }
+
+    public synchronized void clear() {
+        next = 0;
+        count = 0;
+        failed = 0;
+        Arrays.fill(failures, false);
+    }
+
+    public synchronized int getCount() {
+        return count;
+    }
+
+    public synchronized double getErrorRate() {
+        return count == 0 ? 0 : (double) failed / count;
+    }
+
+    /**
+     * @param quantile 0到1之间，例如 0.99
+     * @return 没有数据时返回 0
+     */
+    public long percentile(double quantile) {
+        long[] sorted;
+        synchronized (this) {
+            if (count == 0) {
+                return 0;
+            }
+            sorted = Arrays.copyOf(latencies, count);
+        }
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.min(sorted.length - 1, Math.max(0, index))];
+    }
+}
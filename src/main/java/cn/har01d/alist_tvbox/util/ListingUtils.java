@@ -0,0 +1,49 @@
+package cn.har01d.alist_tvbox.util;
+
+import static cn.har01d.alist_tvbox.util.Constants.FOLDER_PIC;
+
+/**
+ * 目录列表转换为 TvBox 影片时共用的方法
+ */
+public final class ListingUtils {
+    private ListingUtils() {
+    }
+
+    public static String fixPath(String path) {
+        return path.replaceAll("/+", "/");
+    }
+
+    /**
+     * 没有缩略图的文件夹使用默认图标
+     */
+    public static String getCover(String thumb, int type) {
+        String pic = thumb;
+        if (pic.isEmpty() && type == 1) {
+            pic = FOLDER_PIC;
+        }
+        return pic;
+    }
+
+    public static String fileSize(long size) {
+        double sz = size;
+        String filesize;
+        if (sz > 1024 * 1024 * 1024 * 1024.0) {
+            sz /= (1024 * 1024 * 1024 * 1024.0);
+            filesize = "TB";
+        } else if (sz > 1024 * 1024 * 1024.0) {
+            sz /= (1024 * 1024 * 1024.0);
+            filesize = "GB";
+        } else if (sz > 1024 * 1024.0) {
+            sz /= (1024 * 1024.0);
+            filesize = "MB";
+        } else {
+            sz /= 1024.0;
+            filesize = "KB";
+        }
+        String remark = "";
+        if (size > 0) {
+            remark = String.format("%.2f%s", sz, filesize);
+        }
+        return remark;
+    }
+}
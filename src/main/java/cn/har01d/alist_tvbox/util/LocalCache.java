@@ -0,0 +1,177 @@
+package cn.har01d.alist_tvbox.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * 进程内的 LRU 缓存，按条目数量和总权重限制大小，每个条目有自己的过期时间
+ */
+public class LocalCache<K, V> {
+    private final int maxSize;
+    private final long maxWeight;
+    private final ToLongFunction<V> weigher;
+    private final LinkedHashMap<K, Node<V>> map;
+    private long weight;
+
+    public LocalCache(int maxSize) {
+        this(maxSize, 0, v -> 1);
+    }
+
+    /**
+     * @param maxWeight 总权重上限，小于等于0不限制
+     */
+    public LocalCache(int maxSize, long maxWeight, ToLongFunction<V> weigher) {
+        this.maxSize = maxSize;
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+        this.map = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    public synchronized V get(K key) {
+        Node<V> node = map.get(key);
+        if (node == null) {
+            return null;
+        }
+        if (node.isExpired(System.currentTimeMillis())) {
+            remove(key);
+            return null;
+        }
+        return node.value;
+    }
+
+    /**
+     * @param ttl 毫秒, 小于等于0不过期
+     */
+    public synchronized void put(K key, V value, long ttl) {
+        putUntil(key, value, ttl > 0 ? System.currentTimeMillis() + ttl : 0);
+    }
+
+    /**
+     * @param expireAt 过期时间戳 毫秒，0 不过期。用于恢复条目时保留原来的过期时间
+     */
+    public synchronized void putUntil(K key, V value, long expireAt) {
+        if (expireAt > 0 && expireAt <= System.currentTimeMillis()) {
+            remove(key);
+            return;
+        }
+        Node<V> node = new Node<>(value, expireAt, weigher.applyAsLong(value));
+        if (maxWeight > 0 && node.weight > maxWeight) {
+            remove(key);
+            return;
+        }
+        Node<V> old = map.put(key, node);
+        if (old != null) {
+            weight -= old.weight;
+        }
+        weight += node.weight;
+        evict();
+    }
+
+    public synchronized V remove(K key) {
+        Node<V> node = map.remove(key);
+        if (node == null) {
+            return null;
+        }
+        weight -= node.weight;
+        return node.value;
+    }
+
+    /**
+     * 未过期的条目，按最近使用从旧到新排列
+     */
+    public synchronized List<Entry<K, V>> entries() {
+        long now = System.currentTimeMillis();
+        List<Entry<K, V>> list = new ArrayList<>(map.size());
+        for (Map.Entry<K, Node<V>> entry : map.entrySet()) {
+            Node<V> node = entry.getValue();
+            if (!node.isExpired(now)) {
+                list.add(new Entry<>(entry.getKey(), node.value, node.expireAt));
+            }
+        }
+        return list;
+    }
+
+    /**
+     * @return 删除的条目数
+     */
+    public synchronized int removeIf(Predicate<K> predicate) {
+        int count = 0;
+        Iterator<Map.Entry<K, Node<V>>> iterator = map.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<K, Node<V>> entry = iterator.next();
+            if (predicate.test(entry.getKey())) {
+                iterator.remove();
+                weight -= entry.getValue().weight;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public synchronized void clear() {
+        map.clear();
+        weight = 0;
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public synchronized long weight() {
+        return weight;
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<K, Node<V>>> iterator = map.entrySet().iterator();
+        while ((map.size() > maxSize || (maxWeight > 0 && weight > maxWeight)) && iterator.hasNext()) {
+            Node<V> node = iterator.next().getValue();
+            iterator.remove();
+            weight -= node.weight;
+        }
+    }
+
+    public static final class Entry<K, V> {
+        private final K key;
+        private final V value;
+        private final long expireAt;
+
+        private Entry(K key, V value, long expireAt) {
+            this.key = key;
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        public long getExpireAt() {
+            return expireAt;
+        }
+    }
+
+    private static final class Node<V> {
+        private final V value;
+        private final long expireAt;
+        private final long weight;
+
+        private Node(V value, long expireAt, long weight) {
+            this.value = value;
+            this.expireAt = expireAt;
+            this.weight = weight;
+        }
+
+        private boolean isExpired(long now) {
+            return expireAt > 0 && expireAt <= now;
+        }
+    }
+}
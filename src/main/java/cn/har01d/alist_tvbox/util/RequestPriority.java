@@ -0,0 +1,68 @@
+package cn.har01d.alist_tvbox.util;
+
+import java.util.concurrent.Callable;
+
+/**
+ * 当前线程调用上游的优先级。默认是交互请求，预热、后台刷新、镜像探测等使用后台优先级，
+ * 只能使用站点的空闲并发。
+ */
+public final class RequestPriority {
+    public enum Level {
+        INTERACTIVE, BACKGROUND
+    }
+
+    private static final ThreadLocal<Level> CURRENT = new ThreadLocal<>();
+
+    private RequestPriority() {
+    }
+
+    public static Level current() {
+        Level level = CURRENT.get();
+        return level == null ? Level.INTERACTIVE : level;
+    }
+
+    public static boolean isBackground() {
+        return current() == Level.BACKGROUND;
+    }
+
+    public static void background(Runnable task) {
+        run(Level.BACKGROUND, task);
+    }
+
+    public static void run(Level level, Runnable task) {
+        Level old = CURRENT.get();
+        CURRENT.set(level);
+        try {
+            task.run();
+        } finally {
+            restore(old);
+        }
+    }
+
+    /**
+     * 提交到线程池的任务使用提交时的优先级
+     */
+    public static <T> Callable<T> inherit(Callable<T> task) {
+        return wrap(current(), task);
+    }
+
+    public static <T> Callable<T> wrap(Level level, Callable<T> task) {
+        return () -> {
+            Level old = CURRENT.get();
+            CURRENT.set(level);
+            try {
+                return task.call();
+            } finally {
+                restore(old);
+            }
+        };
+    }
+
+    private static void restore(Level old) {
+        if (old == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(old);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package cn.har01d.alist_tvbox.web;
+
+import cn.har01d.alist_tvbox.config.CompactRedisSerializer;
+import cn.har01d.alist_tvbox.service.CacheRefreshService;
+import cn.har01d.alist_tvbox.service.CacheTagService;
+import cn.har01d.alist_tvbox.service.IRedisService;
+import cn.har01d.alist_tvbox.service.ListingStore;
+import cn.har01d.alist_tvbox.service.LocalCacheService;
+import cn.har01d.alist_tvbox.service.MirrorRouter;
+import cn.har01d.alist_tvbox.service.SiteHealthService;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/cache")
+public class CacheController {
+    private final CacheRefreshService cacheRefreshService;
+    private final LocalCacheService localCacheService;
+    private final CompactRedisSerializer compactRedisSerializer;
+    private final IRedisService redisService;
+    private final CacheTagService cacheTagService;
+    private final ListingStore listingStore;
+    private final SiteHealthService siteHealthService;
+    private final MirrorRouter mirrorRouter;
+
+    public CacheController(CacheRefreshService cacheRefreshService, LocalCacheService localCacheService,
+                           CompactRedisSerializer compactRedisSerializer, IRedisService redisService,
+                           CacheTagService cacheTagService, ListingStore listingStore,
+                           SiteHealthService siteHealthService, MirrorRouter mirrorRouter) {
+        this.cacheRefreshService = cacheRefreshService;
+        this.localCacheService = localCacheService;
+        this.compactRedisSerializer = compactRedisSerializer;
+        this.redisService = redisService;
+        this.cacheTagService = cacheTagService;
+        this.listingStore = listingStore;
+        this.siteHealthService = siteHealthService;
+        this.mirrorRouter = mirrorRouter;
+    }
+
+    /**
+     * 删除站点或目录(包括子目录)的缓存
+     */
+    @PostMapping("/invalidate")
+    public Map<String, Object> invalidate(int siteId, String path) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("deleted", cacheTagService.invalidate(siteId, path));
+        return result;
+    }
+
+    @GetMapping("/stats")
+    public Map<String, Object> stats() {
+        Map<String, Object> local = new LinkedHashMap<>();
+        local.put("size", localCacheService.size());
+        local.put("weight", localCacheService.weight());
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("local", local);
+        stats.put("redis", redisService.getStats());
+        stats.put("refresh", cacheRefreshService.getStats());
+        stats.put("codec", compactRedisSerializer.getStats());
+        stats.put("listingStore", listingStore.getStats());
+        stats.put("sites", siteHealthService.getStats());
+        stats.put("mirrors", mirrorRouter.getStats());
+        return stats;
+    }
+}
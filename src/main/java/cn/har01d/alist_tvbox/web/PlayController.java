@@ -29,7 +29,7 @@ public class PlayController {
         log.debug("{} {} {}", request.getMethod(), request.getRequestURI(), request.getQueryString());
         log.debug("get play url - site: {}  path: {}", site, path);
         ServletUriComponentsBuilder builder = ServletUriComponentsBuilder.fromCurrentRequestUri();
-        String url = tvBoxService.getPlayUrl(site, path,builder);
+        String url = tvBoxService.getPlayUrl(site, path);
         response.sendRedirect(parseService.parse(url,builder));
     }
 }
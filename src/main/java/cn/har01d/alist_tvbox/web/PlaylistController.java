@@ -3,9 +3,9 @@ package cn.har01d.alist_tvbox.web;
 import cn.har01d.alist_tvbox.dto.GenerateRequest;
 import cn.har01d.alist_tvbox.service.PlaylistService;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.servlet.http.HttpServletResponse;
-import java.nio.charset.StandardCharsets;
 
 @RestController
 @RequestMapping("/playlist")
@@ -17,7 +17,7 @@ public class PlaylistController {
     }
 
     @GetMapping
-    public byte[] generate(Integer siteId, String path, boolean includeSub, HttpServletResponse response) {
+    public StreamingResponseBody generate(Integer siteId, String path, boolean includeSub, Integer maxDepth, HttpServletResponse response) {
         if (siteId == null) {
             throw new IllegalArgumentException("The parameter siteId is required.");
         }
@@ -25,13 +25,14 @@ public class PlaylistController {
             throw new IllegalArgumentException("The parameter path is required.");
         }
 
-        response.setContentType("text/plain");
+        StreamingResponseBody body = playlistService.stream(siteId, path, includeSub, maxDepth);
+        response.setContentType("text/plain;charset=UTF-8");
         response.setHeader("Content-Disposition", "attachment; filename=\"playlist.txt\"");
-        return playlistService.generate(siteId, path, includeSub).getBytes(StandardCharsets.UTF_8);
+        return body;
     }
 
     @PostMapping
-    public byte[] generate(@RequestBody GenerateRequest request, HttpServletResponse response) {
-        return generate(request.getSiteId(), request.getPath(), request.isIncludeSub(), response);
+    public StreamingResponseBody generate(@RequestBody GenerateRequest request, HttpServletResponse response) {
+        return generate(request.getSiteId(), request.getPath(), request.isIncludeSub(), request.getMaxDepth(), response);
     }
 }
@@ -1,6 +1,8 @@
 package cn.har01d.alist_tvbox.web;
 
 import cn.har01d.alist_tvbox.annotation.RequestRateLimit;
+import cn.har01d.alist_tvbox.service.PlayUrlRewriter;
+import cn.har01d.alist_tvbox.service.PopularityService;
 import cn.har01d.alist_tvbox.service.SubscriptionService;
 import cn.har01d.alist_tvbox.service.TvBoxService;
 import cn.har01d.alist_tvbox.tvbox.MovieList;
@@ -19,10 +21,14 @@ import java.util.Map;
 public class TvBoxController {
     private final TvBoxService tvBoxService;
     private final SubscriptionService subscriptionService;
+    private final PlayUrlRewriter playUrlRewriter;
+    private final PopularityService popularityService;
 
-    public TvBoxController(TvBoxService tvBoxService, SubscriptionService subscriptionService) {
+    public TvBoxController(TvBoxService tvBoxService, SubscriptionService subscriptionService, PlayUrlRewriter playUrlRewriter, PopularityService popularityService) {
         this.tvBoxService = tvBoxService;
         this.subscriptionService = subscriptionService;
+        this.playUrlRewriter = playUrlRewriter;
+        this.popularityService = popularityService;
     }
 
     @GetMapping("/vod")
@@ -30,10 +36,11 @@ public class TvBoxController {
         log.debug("{} {} {}", request.getMethod(), request.getRequestURI(), decodeUrl(request.getQueryString()));
         log.info("path: {}  folder: {} keyword: {}  sort: {}", ids, t, wd, sort);
         if (ids != null && !ids.isEmpty()) {
-            ServletUriComponentsBuilder builder = ServletUriComponentsBuilder.fromCurrentRequestUri();
-            MovieList movieList = tvBoxService.getDetail(ids,builder);
-            return movieList;
+            popularityService.record(PopularityService.DETAIL, ids);
+            MovieList movieList = tvBoxService.getDetail(ids);
+            return playUrlRewriter.rewrite(movieList, ServletUriComponentsBuilder.fromCurrentRequestUri());
         } else if (t != null && !t.isEmpty()) {
+            popularityService.record(PopularityService.LISTING, t);
             return tvBoxService.getMovieList(t, sort, pg);
         } else if (wd != null && !wd.isEmpty()) {
             return tvBoxService.search(wd);
@@ -0,0 +1,104 @@
+package cn.har01d.alist_tvbox.aop;
+
+import cn.har01d.alist_tvbox.annotation.CacheCheck;
+import cn.har01d.alist_tvbox.util.MD5Utils;
+import com.alibaba.fastjson2.JSON;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CacheAspect 每次调用的开销。legacy* 是修改之前的做法: 切面拦截所有 service 方法，每次反射查找方法和注解，
+ * 参数 JSON 后做两次 MD5；cached 使用每个方法只解析一次的 CacheMetadata 和 Murmur3。
+ * 修改之后没有 @CacheCheck 的方法不再经过切面，没有对应的开销。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheKeyBenchmark {
+    private final Map<Method, CacheMetadata> metadataMap = new ConcurrentHashMap<>();
+    private final SampleService target = new SampleService();
+    private Method cachedMethod;
+    private Method plainMethod;
+    private Object[] args;
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        cachedMethod = SampleService.class.getMethod("getMovieList", String.class, String.class, int.class);
+        plainMethod = SampleService.class.getMethod("getPlayUrl", Integer.class, String.class);
+        metadataMap.put(cachedMethod, new CacheMetadata(SampleService.class.getSimpleName(), cachedMethod,
+                cachedMethod.getAnnotation(CacheCheck.class)));
+        args = new Object[]{"1$/电影/华语/2023", "time,desc", 3};
+    }
+
+    @Benchmark
+    public String legacyCached() throws NoSuchMethodException {
+        Method method = target.getClass().getMethod(cachedMethod.getName(), cachedMethod.getParameterTypes());
+        CacheCheck cacheCheck = method.getAnnotation(CacheCheck.class);
+        if (cacheCheck == null) {
+            return null;
+        }
+        StringBuilder key = new StringBuilder();
+        key.append("cache:").append(target.getClass().getSimpleName()).append(":").append(method.getName());
+        StringBuilder pkey = new StringBuilder();
+        boolean hasArgs = false;
+        Annotation[][] parameterAnnotations = method.getParameterAnnotations();
+        for (int i = 0; i < args.length; i++) {
+            for (Annotation annotation : parameterAnnotations[i]) {
+                if (annotation instanceof CacheCheck) {
+                    pkey.append(MD5Utils.md5(JSON.toJSONString(args[i])));
+                    hasArgs = true;
+                }
+            }
+        }
+        if (hasArgs) {
+            key.append(":").append(MD5Utils.md5(pkey.toString()));
+        }
+        return key.toString();
+    }
+
+    @Benchmark
+    public Object legacyNotCached() throws NoSuchMethodException {
+        Method method = target.getClass().getMethod(plainMethod.getName(), plainMethod.getParameterTypes());
+        return method.getAnnotation(CacheCheck.class);
+    }
+
+    @Benchmark
+    public String cached() {
+        return CacheAspect.buildKey(metadataMap.get(cachedMethod), args);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(CacheKeyBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    public static class SampleService {
+        @CacheCheck(exTime = 600, localTime = 60)
+        public Object getMovieList(@CacheCheck String tid, @CacheCheck String sort, @CacheCheck int page) {
+            return null;
+        }
+
+        public String getPlayUrl(Integer siteId, String path) {
+            return null;
+        }
+    }
+}
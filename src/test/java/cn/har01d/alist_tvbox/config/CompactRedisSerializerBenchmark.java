@@ -0,0 +1,89 @@
+package cn.har01d.alist_tvbox.config;
+
+import cn.har01d.alist_tvbox.model.CacheEntry;
+import com.alibaba.fastjson2.support.spring.data.redis.GenericFastJsonRedisSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 和原来的 GenericFastJsonRedisSerializer 对比编码、解码耗时，Setup 中输出每种编码写入 Redis 的字节数
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompactRedisSerializerBenchmark {
+    /**
+     * 一页目录列表中的条目数
+     */
+    @Param({"10", "100", "1000"})
+    private int size;
+
+    private final GenericFastJsonRedisSerializer legacy = new GenericFastJsonRedisSerializer();
+    private final CompactRedisSerializer jsonb = new CompactRedisSerializer(CompactRedisSerializer.CODEC_JSONB, 0);
+    private final CompactRedisSerializer deflate = new CompactRedisSerializer(CompactRedisSerializer.CODEC_JSONB, 1024);
+    private CacheEntry value;
+    private byte[] legacyBytes;
+    private byte[] jsonbBytes;
+    private byte[] deflateBytes;
+
+    @Setup
+    public void setUp() {
+        value = CompactRedisSerializerTest.entry(size);
+        legacyBytes = legacy.serialize(value);
+        jsonbBytes = jsonb.serialize(value);
+        deflateBytes = deflate.serialize(value);
+        System.out.printf("%n%d entries, bytes on wire: json=%d jsonb=%d jsonb+deflate=%d%n",
+                size, legacyBytes.length, jsonbBytes.length, deflateBytes.length);
+    }
+
+    @Benchmark
+    public byte[] legacyEncode() {
+        return legacy.serialize(value);
+    }
+
+    @Benchmark
+    public Object legacyDecode() {
+        return legacy.deserialize(legacyBytes);
+    }
+
+    @Benchmark
+    public byte[] jsonbEncode() {
+        return jsonb.serialize(value);
+    }
+
+    @Benchmark
+    public Object jsonbDecode() {
+        return jsonb.deserialize(jsonbBytes);
+    }
+
+    @Benchmark
+    public byte[] deflateEncode() {
+        return deflate.serialize(value);
+    }
+
+    @Benchmark
+    public Object deflateDecode() {
+        return deflate.deserialize(deflateBytes);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(CompactRedisSerializerBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,143 @@
+package cn.har01d.alist_tvbox.config;
+
+import cn.har01d.alist_tvbox.model.CacheEntry;
+import cn.har01d.alist_tvbox.tvbox.MovieDetail;
+import cn.har01d.alist_tvbox.tvbox.MovieList;
+import com.alibaba.fastjson2.JSONB;
+import com.alibaba.fastjson2.JSONWriter;
+import com.alibaba.fastjson2.support.spring.data.redis.GenericFastJsonRedisSerializer;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompactRedisSerializerTest {
+    private static final byte MAGIC = (byte) 0xAC;
+
+    @Test
+    void jsonRoundTripHasNoHeader() {
+        CompactRedisSerializer serializer = new CompactRedisSerializer(CompactRedisSerializer.CODEC_JSON, 1024);
+        byte[] bytes = serializer.serialize(entry(3));
+
+        assertTrue(bytes[0] != MAGIC);
+        assertEntry(3, serializer.deserialize(bytes));
+    }
+
+    @Test
+    void jsonbRoundTripWithoutCompression() {
+        CompactRedisSerializer serializer = new CompactRedisSerializer(CompactRedisSerializer.CODEC_JSONB, 0);
+        byte[] bytes = serializer.serialize(entry(200));
+
+        assertEquals(MAGIC, bytes[0]);
+        assertEquals(1, bytes[1]);
+        assertEquals(0, bytes[2]);
+        assertEntry(200, serializer.deserialize(bytes));
+    }
+
+    @Test
+    void jsonbRoundTripWithCompression() {
+        CompactRedisSerializer serializer = new CompactRedisSerializer(CompactRedisSerializer.CODEC_JSONB, 64);
+        CacheEntry entry = entry(200);
+        byte[] bytes = serializer.serialize(entry);
+
+        assertEquals(1, bytes[2]);
+        assertTrue(bytes.length < JSONB.toBytes(entry, JSONWriter.Feature.WriteClassName).length);
+        assertEntry(200, serializer.deserialize(bytes));
+    }
+
+    @Test
+    void compressesOnlyAboveThreshold() {
+        CacheEntry entry = entry(50);
+        int size = JSONB.toBytes(entry, JSONWriter.Feature.WriteClassName).length;
+
+        byte[] atThreshold = new CompactRedisSerializer(CompactRedisSerializer.CODEC_JSONB, size).serialize(entry);
+        assertEquals(0, atThreshold[2]);
+        assertEquals(size + 3, atThreshold.length);
+
+        CompactRedisSerializer above = new CompactRedisSerializer(CompactRedisSerializer.CODEC_JSONB, size - 1);
+        byte[] bytes = above.serialize(entry);
+        assertEquals(1, bytes[2]);
+        assertEntry(50, above.deserialize(bytes));
+    }
+
+    @Test
+    void keepsUncompressedBodyWhenDeflateDoesNotHelp() {
+        byte[] random = new byte[512];
+        new java.util.Random(1).nextBytes(random);
+        CompactRedisSerializer serializer = new CompactRedisSerializer(CompactRedisSerializer.CODEC_JSONB, 16);
+        byte[] bytes = serializer.serialize(random);
+
+        assertEquals(0, bytes[2]);
+        assertTrue(Arrays.equals(random, (byte[]) serializer.deserialize(bytes)));
+    }
+
+    @Test
+    void readsLegacyHeaderlessValues() {
+        byte[] legacy = new GenericFastJsonRedisSerializer().serialize(entry(5));
+        for (String codec : new String[]{CompactRedisSerializer.CODEC_JSON, CompactRedisSerializer.CODEC_JSONB}) {
+            assertEntry(5, new CompactRedisSerializer(codec, 64).deserialize(legacy));
+        }
+        assertEquals("plain", new CompactRedisSerializer(CompactRedisSerializer.CODEC_JSONB, 64)
+                .deserialize(new GenericFastJsonRedisSerializer().serialize("plain")));
+    }
+
+    @Test
+    void jsonCodecReadsJsonbValuesDuringRollback() {
+        byte[] bytes = new CompactRedisSerializer(CompactRedisSerializer.CODEC_JSONB, 64).serialize(entry(100));
+        assertEntry(100, new CompactRedisSerializer(CompactRedisSerializer.CODEC_JSON, 64).deserialize(bytes));
+    }
+
+    @Test
+    void rejectsUnknownVersionAndTruncatedData() {
+        CompactRedisSerializer serializer = new CompactRedisSerializer(CompactRedisSerializer.CODEC_JSONB, 64);
+        byte[] bytes = serializer.serialize(entry(200));
+
+        byte[] version = bytes.clone();
+        version[1] = 2;
+        assertThrows(SerializationException.class, () -> serializer.deserialize(version));
+
+        byte[] truncated = Arrays.copyOf(bytes, bytes.length / 2);
+        assertThrows(SerializationException.class, () -> serializer.deserialize(truncated));
+    }
+
+    @Test
+    void nullAndEmpty() {
+        CompactRedisSerializer serializer = new CompactRedisSerializer(CompactRedisSerializer.CODEC_JSONB, 64);
+        assertEquals(0, serializer.serialize(null).length);
+        assertNull(serializer.deserialize(new byte[0]));
+        assertNull(serializer.deserialize(null));
+    }
+
+    static CacheEntry entry(int size) {
+        MovieList list = new MovieList();
+        for (int i = 1; i <= size; i++) {
+            MovieDetail detail = new MovieDetail();
+            detail.setVod_id("1$/电影/华语/第" + i + "集.mp4");
+            detail.setVod_name("第" + i + "集.mp4");
+            detail.setVod_tag("file");
+            detail.setVod_remarks("1.25GB");
+            detail.setSize(1342177280L + i);
+            list.getList().add(detail);
+        }
+        list.setTotal(size);
+        return new CacheEntry(list, 1700000000000L);
+    }
+
+    private static void assertEntry(int size, Object value) {
+        assertTrue(value instanceof CacheEntry, String.valueOf(value));
+        CacheEntry entry = (CacheEntry) value;
+        assertEquals(1700000000000L, entry.getExpireAt());
+        assertTrue(entry.getValue() instanceof MovieList, String.valueOf(entry.getValue()));
+        MovieList list = (MovieList) entry.getValue();
+        assertEquals(size, list.getTotal());
+        assertEquals(size, list.getList().size());
+        MovieDetail last = list.getList().get(size - 1);
+        assertEquals("第" + size + "集.mp4", last.getVod_name());
+        assertEquals(1342177280L + size, last.getSize());
+    }
+}
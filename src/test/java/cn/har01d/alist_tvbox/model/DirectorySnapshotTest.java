@@ -0,0 +1,83 @@
+package cn.har01d.alist_tvbox.model;
+
+import cn.har01d.alist_tvbox.tvbox.MovieDetail;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DirectorySnapshotTest {
+    private final DirectorySnapshot snapshot = new DirectorySnapshot(
+            Arrays.asList(item("季2", "2023-02-01", 0), item("季10", "2023-01-01", 0), item("季1", "2023-03-01", 0)),
+            Arrays.asList(item("第10集.mp4", "2023-01-03", 300), item("第2集.mp4", null, 100),
+                    item("第1集.mp4", "2023-01-01", 200)),
+            Collections.emptyList(), 1000L);
+
+    @Test
+    void foldersAlwaysComeFirst() {
+        assertEquals(Arrays.asList("季1", "季2", "季10", "第1集.mp4", "第2集.mp4", "第10集.mp4"),
+                names(snapshot.getPage("name,asc", 1, 10)));
+        assertEquals(Arrays.asList("季10", "季2", "季1", "第10集.mp4", "第2集.mp4", "第1集.mp4"),
+                names(snapshot.getPage("name,desc", 1, 10)));
+        // 目录大小相同，保持原来的顺序
+        assertEquals(Arrays.asList("季2", "季10", "季1", "第2集.mp4", "第1集.mp4", "第10集.mp4"),
+                names(snapshot.getPage("size,asc", 1, 10)));
+    }
+
+    @Test
+    void sortsByTimeWithMissingTimesFirst() {
+        assertEquals(Arrays.asList("季10", "季2", "季1", "第2集.mp4", "第1集.mp4", "第10集.mp4"),
+                names(snapshot.getPage("time,asc", 1, 10)));
+        assertEquals(Arrays.asList("季1", "季2", "季10", "第10集.mp4", "第1集.mp4", "第2集.mp4"),
+                names(snapshot.getPage("time,desc", 1, 10)));
+    }
+
+    @Test
+    void defaultAndUnknownSort() {
+        assertEquals(names(snapshot.getPage("name,asc", 1, 10)), names(snapshot.getPage(null, 1, 10)));
+        assertEquals(Arrays.asList("季2", "季10", "季1", "第10集.mp4", "第2集.mp4", "第1集.mp4"),
+                names(snapshot.getPage("unknown", 1, 10)));
+    }
+
+    @Test
+    void pages() {
+        assertEquals(6, snapshot.getTotal());
+        assertEquals(3, snapshot.getFolderCount());
+        assertEquals(3, snapshot.getFileCount());
+        assertEquals(Arrays.asList("季1", "季2", "季10", "第1集.mp4"), names(snapshot.getPage("name,asc", 1, 4)));
+        assertEquals(Arrays.asList("第2集.mp4", "第10集.mp4"), names(snapshot.getPage("name,asc", 2, 4)));
+        assertTrue(snapshot.getPage("name,asc", 3, 4).isEmpty());
+        assertEquals(4, snapshot.getPage("name,asc", 0, 4).size());
+    }
+
+    @Test
+    void cachedIndexIsReusedAcrossPages() {
+        List<String> all = new ArrayList<>();
+        for (int page = 1; page <= 6; page++) {
+            all.addAll(names(snapshot.getPage("size,desc", page, 1)));
+        }
+        assertEquals(names(snapshot.getPage("size,desc", 1, 6)), all);
+        assertEquals(Arrays.asList("第10集.mp4", "第1集.mp4", "第2集.mp4"), all.subList(3, 6));
+    }
+
+    private static MovieDetail item(String name, String time, long size) {
+        MovieDetail detail = new MovieDetail();
+        detail.setVod_name(name);
+        detail.setVod_time(time);
+        detail.setSize(size);
+        return detail;
+    }
+
+    private static List<String> names(List<MovieDetail> list) {
+        List<String> names = new ArrayList<>(list.size());
+        for (MovieDetail detail : list) {
+            names.add(detail.getVod_name());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,76 @@
+package cn.har01d.alist_tvbox.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IndexTreeTest {
+    @Test
+    void buildsFoldersFromFilePaths() {
+        IndexTree tree = new IndexTree();
+        tree.add("./电影/华语/01.mp4", true);
+        tree.add("./电影/华语/02.mp4", true);
+        tree.add("./电影/欧美/01.mkv", true);
+        tree.add("./电视剧", false);
+
+        assertEquals(Arrays.asList("电影", "电视剧"), names(tree.find("")));
+        assertEquals(Arrays.asList("华语", "欧美"), names(tree.find("/电影")));
+        assertEquals(Arrays.asList("01.mp4", "02.mp4"), names(tree.find("/电影/华语")));
+        assertTrue(tree.find("/电视剧").getChildren().isEmpty());
+        assertEquals(4, tree.getFolders());
+        assertEquals(3, tree.getFiles());
+    }
+
+    @Test
+    void ignoresDotAndEmptySegments() {
+        IndexTree tree = new IndexTree();
+        tree.add("./a//./b/", false);
+        tree.add("a/b/c.mp4", true);
+
+        assertEquals(Arrays.asList("c.mp4"), names(tree.find("./a/b/")));
+        assertEquals(tree.find("/a/b"), tree.find("a//b"));
+        assertEquals(2, tree.getFolders());
+    }
+
+    @Test
+    void findReturnsNullForMissingPathsAndFiles() {
+        IndexTree tree = new IndexTree();
+        tree.add("a/b.mp4", true);
+
+        assertNull(tree.find("/x"));
+        assertNull(tree.find("/a/b.mp4"));
+        assertNull(tree.find("/a/b.mp4/c"));
+    }
+
+    @Test
+    void fileLaterSeenAsFolderBecomesFolder() {
+        IndexTree tree = new IndexTree();
+        tree.add("a/b", true);
+        assertEquals(1, tree.getFiles());
+
+        tree.add("a/b/c.mp4", true);
+        IndexTree.Node b = tree.find("/a/b");
+        assertTrue(b.isFolder());
+        assertEquals(Arrays.asList("c.mp4"), names(b));
+        assertEquals(2, tree.getFolders());
+        assertEquals(1, tree.getFiles());
+
+        tree.add("a/b", true);
+        assertTrue(tree.find("/a/b").isFolder());
+        assertEquals(1, tree.getFiles());
+    }
+
+    private static List<String> names(IndexTree.Node node) {
+        List<String> names = new ArrayList<>();
+        for (IndexTree.Node child : node.getChildren()) {
+            names.add(child.getName());
+        }
+        return names;
+    }
+}
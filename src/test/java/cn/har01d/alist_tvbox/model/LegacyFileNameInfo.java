@@ -1,7 +1,5 @@
 package cn.har01d.alist_tvbox.model;
 
-import lombok.Data;
-
 import java.text.Collator;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -10,8 +8,10 @@ import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-@Data
-public class FileNameInfo implements Comparable<FileNameInfo> {
+/**
+ * 被 NaturalSortKey 替换之前的 FileNameInfo，只用于测试和基准测试中对比排序结果
+ */
+public class LegacyFileNameInfo implements Comparable<LegacyFileNameInfo> {
     private static final Comparator<Object> comparator = Collator.getInstance(java.util.Locale.CHINA);
     private static final List<String> NUMBERS = Arrays.asList("零", "一", "二", "三", "四", "五", "六", "七", "八", "九", "十");
     private static final Pattern NUMBER = Pattern.compile("(\\d+\\.?\\d*|[零一二三四五六七八九十]+)");
@@ -20,7 +20,7 @@ public class FileNameInfo implements Comparable<FileNameInfo> {
     private final List<String> prefixes = new ArrayList<>();
     private final List<Double> numbers = new ArrayList<>();
 
-    public FileNameInfo(String name) {
+    public LegacyFileNameInfo(String name) {
         this.name = name;
         Matcher matcher = NUMBER.matcher(name);
         while (matcher.find()) {
@@ -45,8 +45,12 @@ public class FileNameInfo implements Comparable<FileNameInfo> {
         }
     }
 
+    public String getName() {
+        return name;
+    }
+
     @Override
-    public int compareTo(FileNameInfo o) {
+    public int compareTo(LegacyFileNameInfo o) {
         int n = Math.min(prefixes.size(), o.prefixes.size());
         for (int i = n - 1; i >= 0; i--) {
             if (prefixes.get(i).equals(o.prefixes.get(i))) {
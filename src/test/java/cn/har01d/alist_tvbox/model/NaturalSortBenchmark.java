@@ -0,0 +1,67 @@
+package cn.har01d.alist_tvbox.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 按名称排序一个大目录：旧的比较器每次比较都重新解析名字，NaturalSortKey 每个名字只解析一次
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NaturalSortBenchmark {
+    @Param({"1000", "10000"})
+    private int size;
+
+    private List<String> names;
+
+    @Setup
+    public void setUp() {
+        names = new ArrayList<>(size);
+        for (int i = 1; i <= size; i++) {
+            names.add("某剧 第" + i + "集 1080p.mp4");
+        }
+        Collections.shuffle(names, new Random(size));
+    }
+
+    @Benchmark
+    public List<String> legacyComparator() {
+        List<String> list = new ArrayList<>(names);
+        list.sort(Comparator.comparing(LegacyFileNameInfo::new));
+        return list;
+    }
+
+    @Benchmark
+    public List<String> naturalSortKey() {
+        List<String> list = new ArrayList<>(names);
+        NaturalSortKey.sort(list, Function.identity(), false);
+        return list;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(NaturalSortBenchmark.class.getSimpleName()).build()).run();
+    }
+}
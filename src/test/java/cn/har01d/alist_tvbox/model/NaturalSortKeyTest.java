@@ -0,0 +1,144 @@
+package cn.har01d.alist_tvbox.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class NaturalSortKeyTest {
+    private static final String[] PARTS = {
+            "第", "集", "季", "S", "E", "ep", "EP", "-", " ", ".", "_", "(", ")", "mp4", ".mkv", "上", "下",
+            "0", "1", "2", "9", "10", "01", "001", "007", "1.5", "2.0", "3.", "12",
+            "零", "一", "二", "三", "九", "十", "十一", "十二", "二十", "二十三", "一百"
+    };
+    private static final String[] CHINESE = {
+            "一", "二", "三", "四", "五", "六", "七", "八", "九", "十", "十一", "十二", "十五", "十九"
+    };
+
+    @Test
+    void numbersCompareByValue() {
+        assertOrder("第1集.mp4", "第2集.mp4", "第10集.mp4", "第100集.mp4");
+        assertOrder("E1", "E1.5", "E2", "E10");
+    }
+
+    @Test
+    void leadingZerosCompareByValue() {
+        assertOrder("01.mp4", "2.mp4", "003.mp4", "10.mp4");
+        assertOrder("S01E009", "S01E010", "S02E001");
+    }
+
+    @Test
+    void chineseNumerals() {
+        assertOrder("第一集", "第二集", "第九集", "第十集", "第十一集", "第十二集");
+        assertOrder("第一季 第2集", "第一季 第10集", "第二季 第1集");
+    }
+
+    @Test
+    void mixedRunsCompareFromTheLastSharedPrefix() {
+        assertOrder("S1 E2", "S1 E10", "S2 E1");
+        assertOrder("a1b2", "a1b10", "a2b1");
+    }
+
+    @Test
+    void tiesFallBackToCollation() {
+        List<String> names = Arrays.asList("1.mkv", "01.mkv", "001.mkv");
+        for (int i = 0; i < names.size(); i++) {
+            for (int j = 0; j < names.size(); j++) {
+                assertSameSign(names.get(i), names.get(j));
+            }
+        }
+    }
+
+    @Test
+    void matchesLegacyComparatorOnRandomNames() {
+        Random random = new Random(20231019L);
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            names.add(randomName(random));
+        }
+        for (int i = 0; i < 200000; i++) {
+            assertSameSign(names.get(random.nextInt(names.size())), names.get(random.nextInt(names.size())));
+        }
+    }
+
+    /**
+     * 任意名字之间的比较不满足传递性(旧的实现也一样)，整体排序用同一个目录中常见的命名方式
+     */
+    @Test
+    void sortMatchesLegacySortAndIsStable() {
+        Random random = new Random(7);
+        List<String[]> items = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            items.add(new String[]{episodeName(random), String.valueOf(i)});
+        }
+
+        for (boolean reversed : new boolean[]{false, true}) {
+            List<String[]> expected = new ArrayList<>(items);
+            Comparator<String[]> comparator = Comparator.comparing(e -> new LegacyFileNameInfo(e[0]));
+            expected.sort(reversed ? comparator.reversed() : comparator);
+
+            List<String[]> actual = new ArrayList<>(items);
+            NaturalSortKey.sort(actual, e -> e[0], reversed);
+
+            assertEquals(ids(expected), ids(actual));
+        }
+    }
+
+    private static void assertOrder(String... names) {
+        for (int i = 0; i + 1 < names.length; i++) {
+            assertEquals(-1, Integer.signum(NaturalSortKey.of(names[i]).compareTo(NaturalSortKey.of(names[i + 1]))),
+                    names[i] + " < " + names[i + 1]);
+            assertSameSign(names[i], names[i + 1]);
+        }
+        List<String> shuffled = new ArrayList<>(Arrays.asList(names));
+        Collections.shuffle(shuffled, new Random(1));
+        NaturalSortKey.sort(shuffled, Function.identity(), false);
+        assertEquals(Arrays.asList(names), shuffled);
+    }
+
+    private static void assertSameSign(String a, String b) {
+        int expected = Integer.signum(new LegacyFileNameInfo(a).compareTo(new LegacyFileNameInfo(b)));
+        int actual = Integer.signum(NaturalSortKey.of(a).compareTo(NaturalSortKey.of(b)));
+        assertEquals(expected, actual, "compare " + a + " and " + b);
+    }
+
+    private static String randomName(Random random) {
+        StringBuilder sb = new StringBuilder();
+        int n = 1 + random.nextInt(6);
+        for (int i = 0; i < n; i++) {
+            sb.append(PARTS[random.nextInt(PARTS.length)]);
+        }
+        return sb.toString();
+    }
+
+    private static String episodeName(Random random) {
+        int n = 1 + random.nextInt(300);
+        switch (random.nextInt(5)) {
+            case 0:
+                return "第" + n + "集.mp4";
+            case 1:
+                return String.format("S%02dE%03d.mkv", 1 + random.nextInt(3), n);
+            case 2:
+                return String.format("%03d.mp4", n);
+            case 3:
+                return "第" + CHINESE[random.nextInt(CHINESE.length)] + "集.mp4";
+            default:
+                return "Show." + n + ".1080p.mkv";
+        }
+    }
+
+    private static List<String> ids(List<String[]> items) {
+        List<String> ids = new ArrayList<>(items.size());
+        for (String[] item : items) {
+            ids.add(item[1]);
+        }
+        return ids;
+    }
+}
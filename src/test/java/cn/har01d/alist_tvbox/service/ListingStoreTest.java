@@ -0,0 +1,141 @@
+package cn.har01d.alist_tvbox.service;
+
+import cn.har01d.alist_tvbox.config.AppProperties;
+import cn.har01d.alist_tvbox.entity.Site;
+import cn.har01d.alist_tvbox.exception.ServiceUnavailableException;
+import cn.har01d.alist_tvbox.model.FsDetail;
+import cn.har01d.alist_tvbox.model.FsInfo;
+import cn.har01d.alist_tvbox.model.FsResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ListingStoreTest {
+    @TempDir
+    Path home;
+
+    private String userHome;
+    private AppProperties appProperties;
+    private ListingStore store;
+    private Site site;
+
+    @BeforeEach
+    void setUp() {
+        userHome = System.getProperty("user.home");
+        System.setProperty("user.home", home.toString());
+        appProperties = new AppProperties();
+        appProperties.setListingStore(true);
+        store = new ListingStore(appProperties);
+        store.init();
+        site = new Site();
+        site.setId(1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.close();
+        System.setProperty("user.home", userHome);
+    }
+
+    @Test
+    void returnsStoredListingWithinExpire() {
+        FsResponse first = store.getListing(site, "/movies", 1, 0, () -> listing("a.mp4"));
+        FsResponse second = store.getListing(site, "/movies", 1, 0, () -> {
+            throw new IllegalStateException("should not load");
+        });
+        assertEquals(first.getFiles().get(0).getName(), second.getFiles().get(0).getName());
+    }
+
+    @Test
+    void expiredListingFallsBackOnTransportFailure() {
+        appProperties.setListingStoreExpire(0);
+        store.getListing(site, "/movies", 1, 0, () -> listing("a.mp4"));
+
+        FsResponse response = store.getListing(site, "/movies", 1, 0, () -> {
+            throw new ServiceUnavailableException("down");
+        });
+        assertEquals("a.mp4", response.getFiles().get(0).getName());
+    }
+
+    @Test
+    void expiredListingDoesNotHideOtherErrors() {
+        appProperties.setListingStoreExpire(0);
+        store.getListing(site, "/movies", 1, 0, () -> listing("a.mp4"));
+
+        assertThrows(HttpClientErrorException.class, () -> store.getListing(site, "/movies", 1, 0, () -> {
+            throw new HttpClientErrorException(HttpStatus.FORBIDDEN);
+        }));
+    }
+
+    @Test
+    void nullListingRemovesStoredEntry() {
+        appProperties.setListingStoreExpire(0);
+        store.getListing(site, "/movies", 1, 0, () -> listing("a.mp4"));
+
+        assertNull(store.getListing(site, "/movies", 1, 0, () -> null));
+        assertThrows(ServiceUnavailableException.class, () -> store.getListing(site, "/movies", 1, 0, () -> {
+            throw new ServiceUnavailableException("down");
+        }));
+    }
+
+    @Test
+    void expiredDetailIsNeverServed() {
+        appProperties.setListingStoreDetailExpire(0);
+        store.getDetail(site, "/movies/a.mp4", () -> detail("http://cdn/a.mp4?expires=1"));
+
+        assertThrows(ServiceUnavailableException.class, () -> store.getDetail(site, "/movies/a.mp4", () -> {
+            throw new ServiceUnavailableException("down");
+        }));
+        assertNull(store.getDetail(site, "/movies/a.mp4", () -> null));
+    }
+
+    @Test
+    void freshDetailIsServed() {
+        FsDetail first = store.getDetail(site, "/movies/a.mp4", () -> detail("http://cdn/a.mp4"));
+        FsDetail second = store.getDetail(site, "/movies/a.mp4", () -> null);
+        assertEquals(first.getRaw_url(), second.getRaw_url());
+    }
+
+    @Test
+    void siteChangeRemovesOnlyThatSite() {
+        Site other = new Site();
+        other.setId(11);
+        store.getListing(site, "/movies", 1, 0, () -> listing("a.mp4"));
+        store.getListing(other, "/movies", 1, 0, () -> listing("b.mp4"));
+
+        store.onSiteChanged(new SiteChangedEvent(1));
+
+        FsResponse reloaded = listing("c.mp4");
+        assertSame(reloaded, store.getListing(site, "/movies", 1, 0, () -> reloaded));
+        FsResponse kept = store.getListing(other, "/movies", 1, 0, () -> listing("d.mp4"));
+        assertEquals("b.mp4", kept.getFiles().get(0).getName());
+        assertTrue(store.isEnabled());
+    }
+
+    private static FsResponse listing(String name) {
+        FsInfo info = new FsInfo();
+        info.setName(name);
+        FsResponse response = new FsResponse();
+        response.getFiles().add(info);
+        response.setTotal(1);
+        return response;
+    }
+
+    private static FsDetail detail(String url) {
+        FsDetail detail = new FsDetail();
+        detail.setName("a.mp4");
+        detail.setRaw_url(url);
+        return detail;
+    }
+}
@@ -0,0 +1,94 @@
+package cn.har01d.alist_tvbox.service;
+
+import cn.har01d.alist_tvbox.config.AppProperties;
+import cn.har01d.alist_tvbox.model.UrlRewrite;
+import cn.har01d.alist_tvbox.tvbox.MovieDetail;
+import cn.har01d.alist_tvbox.tvbox.MovieList;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class PlayUrlRewriterTest {
+    private static final String PATH = "%2F%E7%94%B5%E5%BD%B1%2F1.mp4";
+
+    @Test
+    void replacesBaseWithRequestAddress() {
+        PlayUrlRewriter rewriter = new PlayUrlRewriter(new AppProperties());
+        String url = rewriter.buildPlayUrl(1, PATH);
+
+        assertEquals("http://192.168.1.2:4567/alist/play?site=1&path=" + PATH,
+                rewriter.rewrite(url, request("http://192.168.1.2:4567/vod?ac=web&ids=1")));
+        assertEquals("http://tv.example.com/alist/play?site=1&path=" + PATH,
+                rewriter.rewrite(url, request("http://tv.example.com/vod")));
+    }
+
+    @Test
+    void httpsPortSwitchesScheme() {
+        PlayUrlRewriter rewriter = new PlayUrlRewriter(new AppProperties());
+        String url = rewriter.buildPlayUrl(2, PATH);
+
+        assertEquals("https://tv.example.com:9443/alist/play?site=2&path=" + PATH,
+                rewriter.rewrite(url, request("http://tv.example.com:9443/vod")));
+    }
+
+    @Test
+    void rulesApplyByHost() {
+        AppProperties appProperties = new AppProperties();
+        appProperties.getUrlRewrites().add(rule("tv.example.com", "http://192.168.1.10:5244", "https://pan.example.com"));
+        appProperties.getUrlRewrites().add(rule(null, "/d/", "/p/"));
+        appProperties.getUrlRewrites().add(rule("", "", "ignored"));
+        PlayUrlRewriter rewriter = new PlayUrlRewriter(appProperties);
+        String url = "http://192.168.1.10:5244/d/movie.mp4";
+
+        assertEquals("https://pan.example.com/p/movie.mp4", rewriter.rewrite(url, request("http://TV.example.com/vod")));
+        assertEquals("http://192.168.1.10:5244/p/movie.mp4", rewriter.rewrite(url, request("http://192.168.1.2:4567/vod")));
+    }
+
+    @Test
+    void movieListIsCopied() {
+        PlayUrlRewriter rewriter = new PlayUrlRewriter(new AppProperties());
+        MovieList movieList = new MovieList();
+        movieList.setPage(2);
+        movieList.setTotal(1);
+        MovieDetail detail = new MovieDetail();
+        detail.setVod_id("1$/电影/1.mp4");
+        detail.setVod_name("1.mp4");
+        detail.setVod_play_url(rewriter.buildPlayUrl(1, PATH));
+        movieList.getList().add(detail);
+
+        MovieList result = rewriter.rewrite(movieList, request("http://192.168.1.2:4567/vod"));
+
+        assertNotSame(movieList, result);
+        assertEquals(2, result.getPage());
+        assertEquals(1, result.getTotal());
+        assertEquals("1.mp4", result.getList().get(0).getVod_name());
+        assertEquals("http://192.168.1.2:4567/alist/play?site=1&path=" + PATH, result.getList().get(0).getVod_play_url());
+        assertEquals(PlayUrlRewriter.BASE_URL + "/alist/play?site=1&path=" + PATH, detail.getVod_play_url());
+    }
+
+    @Test
+    void nullValues() {
+        PlayUrlRewriter rewriter = new PlayUrlRewriter(new AppProperties());
+        assertNull(rewriter.rewrite((MovieList) null, request("http://localhost/vod")));
+        assertNull(rewriter.rewrite((String) null, request("http://localhost/vod")));
+
+        MovieList movieList = new MovieList();
+        movieList.getList().add(new MovieDetail());
+        assertNull(rewriter.rewrite(movieList, request("http://localhost/vod")).getList().get(0).getVod_play_url());
+    }
+
+    private static UriComponentsBuilder request(String url) {
+        return UriComponentsBuilder.fromHttpUrl(url);
+    }
+
+    private static UrlRewrite rule(String host, String from, String to) {
+        UrlRewrite rule = new UrlRewrite();
+        rule.setHost(host);
+        rule.setFrom(from);
+        rule.setTo(to);
+        return rule;
+    }
+}
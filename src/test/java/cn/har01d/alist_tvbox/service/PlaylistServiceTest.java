@@ -0,0 +1,132 @@
+package cn.har01d.alist_tvbox.service;
+
+import cn.har01d.alist_tvbox.config.AppProperties;
+import cn.har01d.alist_tvbox.entity.Site;
+import cn.har01d.alist_tvbox.exception.ServiceUnavailableException;
+import cn.har01d.alist_tvbox.model.FsInfo;
+import cn.har01d.alist_tvbox.model.FsResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PlaylistServiceTest {
+    private final Map<String, FsResponse> listings = new HashMap<>();
+    private PlaylistService playlistService;
+
+    @BeforeEach
+    void setUp() {
+        AppProperties appProperties = new AppProperties();
+        appProperties.setFormats(new HashSet<>(Arrays.asList("mp4", "mkv")));
+        appProperties.setPlaylistConcurrency(2);
+        Site site = new Site();
+        site.setId(1);
+        site.setName("test");
+        SiteService siteService = new SiteService(appProperties, null, null) {
+            @Override
+            public Site getById(Integer id) {
+                return site;
+            }
+        };
+        AListService aListService = new AListService(siteService, null, null, null, appProperties) {
+            @Override
+            public FsResponse listFiles(Site site, String path, int page, int size) {
+                FsResponse response = listings.get(path);
+                if (response == null) {
+                    throw new ServiceUnavailableException("站点test繁忙");
+                }
+                return response;
+            }
+        };
+        playlistService = new PlaylistService(aListService, siteService, appProperties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        playlistService.shutdown();
+    }
+
+    @Test
+    void writesSectionsInFolderOrder() throws IOException {
+        listings.put("/tv", listing(folder("A"), folder("B"), file("readme.txt")));
+        listings.put("/tv/A", listing(file("01.mp4"), file("02.mp4")));
+        listings.put("/tv/B", listing(file("01.mkv"), file("02.mkv")));
+
+        String text = generate("/tv");
+
+        assertTrue(text.indexOf("A,#genre#\n01,A/01.mp4\n02,A/02.mp4\n") > 0, text);
+        assertTrue(text.indexOf("B,#genre#\n01,B/01.mkv\n02,B/02.mkv\n") > text.indexOf("A,#genre#"), text);
+        assertTrue(!text.contains("#error"), text);
+    }
+
+    @Test
+    void rootFailureFailsBeforeResponse() {
+        assertThrows(ServiceUnavailableException.class, () -> playlistService.stream(1, "/tv", true, null));
+    }
+
+    @Test
+    void subfolderFailureWritesMarkerAndAborts() {
+        listings.put("/tv", listing(folder("A"), folder("B"), folder("C")));
+        listings.put("/tv/A", listing(file("01.mp4"), file("02.mp4")));
+        listings.put("/tv/C", listing(file("01.mp4"), file("02.mp4")));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        IOException e = assertThrows(IOException.class,
+                () -> playlistService.stream(1, "/tv", true, null).writeTo(out));
+        String text = new String(out.toByteArray(), StandardCharsets.UTF_8);
+
+        assertTrue(e.getCause() instanceof ServiceUnavailableException, String.valueOf(e.getCause()));
+        assertTrue(text.contains("A,#genre#"), text);
+        assertTrue(text.endsWith("#error list files /tv/B failed\n"), text);
+        assertTrue(!text.contains("C,#genre#"), text);
+    }
+
+    @Test
+    void stopsAtMaxDepth() throws IOException {
+        listings.put("/tv", listing(folder("A")));
+        listings.put("/tv/A", listing(folder("B"), file("01.mp4"), file("02.mp4")));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        playlistService.stream(1, "/tv", true, 1).writeTo(out);
+        String text = new String(out.toByteArray(), StandardCharsets.UTF_8);
+
+        assertTrue(text.contains("A,#genre#"), text);
+        assertTrue(!text.contains("#error"), text);
+    }
+
+    private String generate(String path) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        playlistService.stream(1, path, true, null).writeTo(out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static FsResponse listing(FsInfo... files) {
+        FsResponse response = new FsResponse();
+        response.setFiles(Arrays.asList(files));
+        return response;
+    }
+
+    private static FsInfo folder(String name) {
+        FsInfo info = new FsInfo();
+        info.setName(name);
+        info.setType(1);
+        return info;
+    }
+
+    private static FsInfo file(String name) {
+        FsInfo info = new FsInfo();
+        info.setName(name);
+        info.setType(2);
+        return info;
+    }
+}
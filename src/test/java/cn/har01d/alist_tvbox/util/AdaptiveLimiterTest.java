@@ -0,0 +1,175 @@
+package cn.har01d.alist_tvbox.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveLimiterTest {
+    @Test
+    void backgroundUsesThreeQuartersOfTheLimit() throws InterruptedException {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(4, 4, 0);
+        assertTrue(limiter.acquire(true, 0));
+        assertTrue(limiter.acquire(true, 0));
+        assertTrue(limiter.acquire(true, 0));
+        assertFalse(limiter.acquire(true, 0));
+        assertTrue(limiter.acquire(false, 0));
+        assertFalse(limiter.acquire(false, 0));
+        assertEquals(4, limiter.getStats().get("inFlight"));
+        assertEquals(2L, limiter.getStats().get("rejected"));
+    }
+
+    @Test
+    void interactiveWaitersAreGrantedBeforeBackground() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(1, 1, 10);
+        assertTrue(limiter.acquire(false, 0));
+
+        List<String> order = new CopyOnWriteArrayList<>();
+        Thread background = waiter(limiter, true, "background", order);
+        await(() -> stat(limiter, "backgroundWaiting") == 1);
+        Thread interactive = waiter(limiter, false, "interactive", order);
+        await(() -> stat(limiter, "waiting") == 1);
+
+        limiter.cancel();
+        interactive.join(5000);
+        assertEquals(1, order.size());
+        assertEquals("interactive", order.get(0));
+        assertEquals(1, stat(limiter, "backgroundWaiting"));
+
+        limiter.cancel();
+        background.join(5000);
+        assertEquals(2, order.size());
+        assertEquals("background", order.get(1));
+        assertEquals(1, stat(limiter, "inFlight"));
+    }
+
+    @Test
+    void timedOutWaiterLeavesTheQueue() throws InterruptedException {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(1, 1, 1);
+        assertTrue(limiter.acquire(false, 0));
+
+        assertFalse(limiter.acquire(false, 50));
+        assertEquals(0, stat(limiter, "waiting"));
+        assertEquals(1L, limiter.getStats().get("timeouts"));
+        assertEquals(1, stat(limiter, "inFlight"));
+
+        // 超时的请求不再占用队列位置
+        limiter.cancel();
+        assertTrue(limiter.acquire(false, 0));
+        assertEquals(0L, limiter.getStats().get("rejected"));
+    }
+
+    @Test
+    void interruptedWaiterLeavesTheQueue() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(1, 1, 10);
+        assertTrue(limiter.acquire(false, 0));
+
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            try {
+                limiter.acquire(false, 60000);
+            } catch (Throwable e) {
+                error.set(e);
+            }
+        });
+        thread.start();
+        await(() -> stat(limiter, "waiting") == 1);
+        thread.interrupt();
+        thread.join(5000);
+
+        assertTrue(error.get() instanceof InterruptedException, String.valueOf(error.get()));
+        assertEquals(0, stat(limiter, "waiting"));
+        assertEquals(1, stat(limiter, "inFlight"));
+    }
+
+    /**
+     * 等待的线程先被中断，还没有拿到锁时又得到许可: 抛出 InterruptedException 并归还许可
+     */
+    @Test
+    void interruptAfterGrantReturnsThePermit() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(1, 1, 10);
+        assertTrue(limiter.acquire(false, 0));
+        ReentrantLock lock = lock(limiter);
+
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            try {
+                limiter.acquire(false, 60000);
+            } catch (Throwable e) {
+                error.set(e);
+            }
+        });
+        thread.start();
+        await(() -> stat(limiter, "waiting") == 1);
+
+        lock.lock();
+        try {
+            thread.interrupt();
+            // 线程已经在等待锁，说明中断已经被处理，之后的许可不会改变结果
+            await(() -> lock.hasQueuedThread(thread));
+            limiter.cancel();
+            assertEquals(1, limiter.getStats().get("inFlight"));
+        } finally {
+            lock.unlock();
+        }
+        thread.join(5000);
+
+        assertTrue(error.get() instanceof InterruptedException, String.valueOf(error.get()));
+        assertEquals(0, stat(limiter, "inFlight"));
+        assertEquals(0, stat(limiter, "waiting"));
+        assertTrue(limiter.acquire(false, 0));
+    }
+
+    @Test
+    void failuresShrinkTheLimit() throws InterruptedException {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(10, 20, 0);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limiter.acquire(false, 0));
+            limiter.release(100, false);
+        }
+        assertEquals(3, stat(limiter, "limit"));
+        assertEquals(0, stat(limiter, "inFlight"));
+    }
+
+    private static Thread waiter(AdaptiveLimiter limiter, boolean background, String name, List<String> order) {
+        Thread thread = new Thread(() -> {
+            try {
+                if (limiter.acquire(background, 60000)) {
+                    order.add(name);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static int stat(AdaptiveLimiter limiter, String name) {
+        return ((Number) limiter.getStats().get(name)).intValue();
+    }
+
+    private static ReentrantLock lock(AdaptiveLimiter limiter) throws ReflectiveOperationException {
+        Field field = AdaptiveLimiter.class.getDeclaredField("lock");
+        field.setAccessible(true);
+        return (ReentrantLock) field.get(limiter);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("condition not met in time");
+            }
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package cn.har01d.alist_tvbox.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CircuitBreakerTest {
+    @Test
+    void opensAfterConsecutiveFailures() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 3, 60000);
+        breaker.onFailure();
+        breaker.onFailure();
+        breaker.onSuccess();
+        breaker.onFailure();
+        breaker.onFailure();
+        assertTrue(breaker.allowRequest());
+
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+        assertFalse(breaker.canProbe());
+        assertFalse(breaker.tryHalfOpen());
+        assertEquals(1L, breaker.getStats().get("trips"));
+        assertEquals(1L, breaker.getStats().get("rejected"));
+    }
+
+    @Test
+    void halfOpenProbeClosesOnSuccess() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 1, 0);
+        breaker.onFailure();
+        assertTrue(breaker.canProbe());
+
+        assertTrue(breaker.tryHalfOpen());
+        assertFalse(breaker.tryHalfOpen());
+        assertFalse(breaker.allowRequest());
+
+        breaker.onSuccess();
+        assertTrue(breaker.isClosed());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    void halfOpenProbeReopensOnFailure() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 5, 0);
+        breaker.trip();
+        assertTrue(breaker.tryHalfOpen());
+
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(1L, breaker.getStats().get("trips"));
+    }
+
+    @Test
+    void tripIsIdempotent() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 5, 60000);
+        breaker.trip();
+        breaker.trip();
+        breaker.onFailure();
+        assertEquals(1L, breaker.getStats().get("trips"));
+        assertTrue(breaker.getStats().containsKey("openedAt"));
+    }
+
+    @Test
+    void onlyOneConcurrentProbe() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("test", 1, 0);
+        breaker.onFailure();
+        int threads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return breaker.tryHalfOpen();
+            }));
+        }
+        start.countDown();
+        int probes = 0;
+        for (Future<Boolean> future : futures) {
+            if (future.get(5, TimeUnit.SECONDS)) {
+                probes++;
+            }
+        }
+        executor.shutdownNow();
+        assertEquals(1, probes);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    }
+}
@@ -0,0 +1,79 @@
+package cn.har01d.alist_tvbox.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * MurmurHash3 x64 128 参考值，和 SMHasher / Guava murmur3_128 的结果一致(h1 和 h2 按十六进制输出)
+ */
+class HashUtilsTest {
+    private static final String ALPHABET = "0123456789abcdefghijklmnopqrstuvwxyz";
+    /**
+     * ALPHABET 前 n 个字符的哈希，覆盖 0 到 33 字节: 空输入、每一种尾部长度和多个 16 字节块
+     */
+    private static final String[] PREFIX_VECTORS = {
+            "00000000000000000000000000000000",
+            "2ac9debed546a3803a8de9e53c875e09",
+            "649e4eaa7fc1708ee6945110230f2ad6",
+            "ce68f60d7c353bdb00364cd5936bf18a",
+            "0f95757ce7f38254b4c67c9e6f12ab4b",
+            "0f04e459497f3fc1eccc6223a28dd613",
+            "88c0a92586be0a2781062d6137728244",
+            "13eb9fb82606f7a6b4ebef492fdef34e",
+            "8236039b7387354dc3369387d8964920",
+            "4c1e87519fe738ba72a17af899d597f1",
+            "3f9652ac3effeb248027a17cf2990b07",
+            "4bc3eacd29d386297cb2d9e797da9c92",
+            "66352b8cee9e3ca7a9edf0b381a8fc58",
+            "5eb2f8db4265931e801ce853e61d0ab7",
+            "07a4a014dd59f71aaaf437854cd22231",
+            "a62dd5f6c0bf23514fccf50c7c544cf0",
+            "4be06d94cf4ad1a787c35b5c63a708da",
+            "8e32612daa45f9de0800f4c206c372ee",
+            "c511d2a50b58fae82ad4543583f3b99f",
+            "ad3d7fc0b3244b47dd72c8187029f5ce",
+            "e4c83e24f076a3fdf99c8c583a8fa8d7",
+            "00ad50be807c22daeacfab2a02802a63",
+            "4764a8aa9d5558b58a526f6720f760bb",
+            "25239974a83067c20b2a29517c6a8f3a",
+            "354bbd1b765bad7a2cdc72f10e2a15d7",
+            "04c8092e7d043d06b3883500babe4bb9",
+            "aa9b44a02223a5711843b86c02ba3235",
+            "3f072b98d041b50b06bc09f4c56ee162",
+            "7ec02f7f7b6053946659e331b65838f1",
+            "2e5303ba146b2249de32a32ff658ef73",
+            "406ef30c0eb47ac8325f41c06f57e4bc",
+            "b828780c1a6e05423922739113a7e9b2",
+            "2f285ccec0edf1f7c405d66374dea50b",
+            "e82017bf95741128ddc56eb32bc3a99a",
+    };
+
+    @Test
+    void publishedVector() {
+        assertEquals("e34bbc7bbc071b6c7a433ca9c49a9347", HashUtils.hash128("The quick brown fox jumps over the lazy dog"));
+    }
+
+    @Test
+    void everyTailLength() {
+        for (int n = 0; n < PREFIX_VECTORS.length; n++) {
+            assertEquals(PREFIX_VECTORS[n], HashUtils.hash128(ALPHABET.substring(0, n)), "length " + n);
+        }
+    }
+
+    @Test
+    void utf8Input() {
+        assertEquals("cbd8a7b341bd9b025b1e906a48ae1d19", HashUtils.hash128("hello"));
+        assertEquals("7021bfde736591ae00fc5f980420ab7c", HashUtils.hash128("中文目录/第1集.mp4"));
+        assertEquals("617277dce8475581ad8b407b2bed93cc", HashUtils.hash128(new StringBuilder("getMovieList:1$/电影/华语#time,desc#1")));
+    }
+
+    @Test
+    void seed() {
+        long[] hash = HashUtils.murmur3("hello".getBytes(StandardCharsets.UTF_8), 123);
+        assertEquals(0x29de5fd20a9dc50bL, hash[0]);
+        assertEquals(0x0e7a2261af65ed82L, hash[1]);
+    }
+}
@@ -0,0 +1,70 @@
+package cn.har01d.alist_tvbox.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LatencyWindowTest {
+    @Test
+    void empty() {
+        LatencyWindow window = new LatencyWindow(10);
+        assertEquals(0, window.getCount());
+        assertEquals(0.0, window.getErrorRate());
+        assertEquals(0, window.percentile(0.99));
+    }
+
+    @Test
+    void percentiles() {
+        LatencyWindow window = new LatencyWindow(100);
+        for (int i = 100; i >= 1; i--) {
+            window.record(i, true);
+        }
+        assertEquals(1, window.percentile(0));
+        assertEquals(50, window.percentile(0.5));
+        assertEquals(99, window.percentile(0.99));
+        assertEquals(100, window.percentile(1));
+    }
+
+    @Test
+    void keepsOnlyTheLastEntries() {
+        LatencyWindow window = new LatencyWindow(4);
+        window.record(1000, false);
+        window.record(1000, false);
+        for (int i = 1; i <= 4; i++) {
+            window.record(i, true);
+        }
+        assertEquals(4, window.getCount());
+        assertEquals(0.0, window.getErrorRate());
+        assertEquals(4, window.percentile(1));
+    }
+
+    @Test
+    void errorRateFollowsEvictions() {
+        LatencyWindow window = new LatencyWindow(4);
+        window.record(10, false);
+        window.record(10, true);
+        window.record(10, false);
+        window.record(10, true);
+        assertEquals(0.5, window.getErrorRate());
+
+        window.record(10, true);
+        assertEquals(0.25, window.getErrorRate());
+        window.record(10, false);
+        assertEquals(0.5, window.getErrorRate());
+    }
+
+    @Test
+    void clear() {
+        LatencyWindow window = new LatencyWindow(4);
+        window.record(10, false);
+        window.record(20, false);
+        window.clear();
+        assertEquals(0, window.getCount());
+        assertEquals(0.0, window.getErrorRate());
+
+        window.record(5, true);
+        assertEquals(1, window.getCount());
+        assertEquals(5, window.percentile(0.99));
+        assertEquals(0.0, window.getErrorRate());
+    }
+}
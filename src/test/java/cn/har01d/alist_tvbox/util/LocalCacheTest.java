@@ -0,0 +1,91 @@
+package cn.har01d.alist_tvbox.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class LocalCacheTest {
+    @Test
+    void evictsLeastRecentlyUsed() {
+        LocalCache<String, String> cache = new LocalCache<>(2);
+        cache.put("a", "1", 0);
+        cache.put("b", "2", 0);
+        cache.get("a");
+        cache.put("c", "3", 0);
+
+        assertNull(cache.get("b"));
+        assertEquals("1", cache.get("a"));
+        assertEquals("3", cache.get("c"));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void evictsByWeight() {
+        LocalCache<String, String> cache = new LocalCache<>(10, 10, String::length);
+        cache.put("a", "aaaa", 0);
+        cache.put("b", "bbbb", 0);
+        cache.put("c", "cccc", 0);
+
+        assertNull(cache.get("a"));
+        assertEquals(8, cache.weight());
+
+        cache.put("b", "b", 0);
+        assertEquals(5, cache.weight());
+
+        cache.put("big", "xxxxxxxxxxx", 0);
+        assertNull(cache.get("big"));
+        assertEquals(5, cache.weight());
+    }
+
+    @Test
+    void expiresEntries() {
+        LocalCache<String, String> cache = new LocalCache<>(10);
+        cache.putUntil("old", "1", System.currentTimeMillis() - 1);
+        cache.putUntil("new", "2", System.currentTimeMillis() + 60000);
+        cache.put("forever", "3", 0);
+
+        assertNull(cache.get("old"));
+        assertEquals(2, cache.size());
+        assertEquals("2", cache.get("new"));
+        assertEquals("3", cache.get("forever"));
+    }
+
+    @Test
+    void entriesKeepRecencyOrderAndExpireAt() {
+        LocalCache<String, String> cache = new LocalCache<>(10);
+        long expireAt = System.currentTimeMillis() + 60000;
+        cache.putUntil("a", "1", expireAt);
+        cache.put("b", "2", 0);
+        cache.get("a");
+
+        List<String> keys = new ArrayList<>();
+        for (LocalCache.Entry<String, String> entry : cache.entries()) {
+            keys.add(entry.getKey());
+        }
+        assertEquals(Arrays.asList("b", "a"), keys);
+        assertEquals(expireAt, cache.entries().get(1).getExpireAt());
+    }
+
+    @Test
+    void removeIfAndClearUpdateWeight() {
+        LocalCache<String, String> cache = new LocalCache<>(10, 100, String::length);
+        cache.put("1$/a", "aa", 0);
+        cache.put("11$/a", "bbb", 0);
+        cache.put("1$/b", "c", 0);
+
+        assertEquals(2, cache.removeIf(key -> key.startsWith("1$")));
+        assertEquals(3, cache.weight());
+        assertEquals("bbb", cache.remove("11$/a"));
+        assertEquals(0, cache.weight());
+
+        cache.put("x", "x", 0);
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.weight());
+    }
+}
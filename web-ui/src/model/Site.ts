@@ -5,6 +5,9 @@ export interface Site {
   password: string
   searchable: boolean
   indexFile: string
+  proxyPlay: boolean
+  indexBrowse: boolean
+  mirrorGroup: string
   disabled: boolean
   order: number
 }